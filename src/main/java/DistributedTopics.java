@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import application.LdaGibbsSampler;
+import application.LdaModel;
+import application.LdaUtil;
+import application.RandomStream;
+import application.ReviewJsonInputFormat;
+import application.ReviewTokenizer;
+import application.ReviewWritable;
+import application.TermFrequency;
+import application.TopicCounts;
+import application.TopicDocument;
+import application.TopicSampler;
+import application.VariablesJson;
+import application.Vocabulary;
+
+/**
+ * Trains the topics of the reviews with Approximate Distributed LDA.<br>
+ * A first job tokenizes the reviews once, keeping the documents as words and
+ * building the vocabulary, pruned as set by the keys of
+ * {@link VocabularyPruning}; the words left out are dropped from the
+ * documents by the first iteration. Every following job is one iteration: each mapper
+ * samples the documents of its split against the topic--term counts of the
+ * previous iteration, writes them back with their new topics and emits the
+ * counts of its split, which the reducers add up into the counts of the next
+ * iteration. The first iteration only assigns random topics. The topics are
+ * written to the output as in {@link ReviewsTopics}. lda.sampler chooses how
+ * topics are drawn: dense, sparse or alias, see {@link TopicSampler}. The
+ * model is saved next to them, see {@link LdaModel}. With
+ * lda.seed set, each split draws from a stream seeded by it, the iteration
+ * and the split, so a run over the same input can be replayed.
+ */
+public class DistributedTopics {
+
+	public static final String TOPICS_KEY = "lda.topics";
+	public static final String ALPHA_KEY = "lda.alpha";
+	public static final String BETA_KEY = "lda.beta";
+	public static final String ITERATIONS_KEY = "lda.iterations";
+	public static final String WORDS_KEY = "lda.topic.words";
+	public static final String SAMPLER_KEY = "lda.sampler";
+	public static final String SEED_KEY = "lda.seed";
+
+	static final String ITERATION_KEY = "lda.iteration";
+	static final String VOCABULARY_PATH_KEY = "lda.vocabulary.path";
+	static final String VOCABULARY_SIZE_KEY = "lda.vocabulary.size";
+	static final String COUNTS_PATH_KEY = "lda.counts.path";
+
+	static final String DOCS = "docs";
+	static final String STATE = "state";
+
+	/**
+	 * Writes the words of each review as a document and counts the
+	 * frequencies of the words, see {@link VocabularyPruning.FrequencyCounter}.
+	 */
+	public static class VocabularyMapper extends Mapper<LongWritable, ReviewWritable, Text, TermFrequency> {
+
+		private ReviewTokenizer tokenizer;
+		private VocabularyPruning.FrequencyCounter counter;
+		private MultipleOutputs<Text, TermFrequency> outputs;
+		private final VariablesJson variablesJson = new VariablesJson();
+		private final ArrayList<String> list = new ArrayList<String>();
+		private final Text document = new Text();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			tokenizer = new ReviewTokenizer(context);
+			counter = new VocabularyPruning.FrequencyCounter(context);
+			outputs = new MultipleOutputs<Text, TermFrequency>(context);
+		}
+
+		public void map(LongWritable key, ReviewWritable value, Context context) throws IOException, InterruptedException {
+			if(value.getText().getLength() > 0) {
+				value.toVariablesJson(variablesJson);
+				list.clear();
+				tokenizer.tokenize(variablesJson.getText(), list);
+				if(list.isEmpty()) {
+					return;
+				}
+				document.set(String.join(",", list));
+				outputs.write(DOCS, key, document);
+				counter.add(list);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			counter.flush();
+			outputs.close();
+		}
+	}
+
+	/**
+	 * One iteration over a split: assigns random topics to the documents of
+	 * the first iteration, samples them in the following ones.
+	 */
+	public static class SampleMapper extends Mapper<LongWritable, Writable, IntWritable, TopicCounts> {
+
+		private int K;
+		private int iteration;
+		private Vocabulary vocabulary;
+		private LdaGibbsSampler sampler;
+		private RandomStream random;
+		private MultipleOutputs<IntWritable, TopicCounts> outputs;
+		private final TopicDocument document = new TopicDocument();
+
+		/**
+		 * shardCounts[w * K + k] instances of word w assigned to topic k in this split<br>
+		 */
+		private int[] shardCounts;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			K = conf.getInt(TOPICS_KEY, 10);
+			int V = conf.getInt(VOCABULARY_SIZE_KEY, 0);
+			iteration = conf.getInt(ITERATION_KEY, 0);
+			long seed = conf.getLong(SEED_KEY, 0) + 1000003L * iteration + context.getTaskAttemptID().getTaskID().getId();
+			if(iteration == 0) {
+				vocabulary = loadVocabulary(conf, new Path(conf.get(VOCABULARY_PATH_KEY)));
+				random = conf.get(SEED_KEY) == null ? new RandomStream() : new RandomStream(seed);
+			} else {
+				sampler = new LdaGibbsSampler(V);
+				sampler.setSampler(TopicSampler.create(conf.get(SAMPLER_KEY)));
+				if(conf.get(SEED_KEY) != null) {
+					sampler.setSeed(seed);
+				}
+				sampler.shard(K, conf.getFloat(ALPHA_KEY, 2.0f), conf.getFloat(BETA_KEY, 0.5f),
+						loadCounts(conf, new Path(conf.get(COUNTS_PATH_KEY)), V, K));
+			}
+			shardCounts = new int[V * K];
+			outputs = new MultipleOutputs<IntWritable, TopicCounts>(context);
+		}
+
+		public void map(LongWritable key, Writable value, Context context) throws IOException, InterruptedException {
+			TopicDocument doc;
+			if(iteration == 0) {
+				doc = document;
+				doc.clear();
+				for (String word : value.toString().split(",")) {
+					int id = vocabulary.indexOf(word);
+					if(id >= 0) {
+						doc.add(id, random.nextInt(K));
+					}
+				}
+			} else {
+				doc = (TopicDocument) value;
+				sampler.sampleDocument(doc.getWords(), doc.getTopics(), doc.getLength());
+			}
+			int[] words = doc.getWords();
+			int[] topics = doc.getTopics();
+			for (int n = 0; n < doc.getLength(); n++) {
+				shardCounts[words[n] * K + topics[n]]++;
+			}
+			outputs.write(STATE, key, doc);
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			IntWritable word = new IntWritable();
+			TopicCounts counts = new TopicCounts();
+			int[] c = new int[K];
+			for (int w = 0; w < shardCounts.length / K; w++) {
+				for (int k = 0; k < K; k++) {
+					if(shardCounts[w * K + k] != 0) {
+						System.arraycopy(shardCounts, w * K, c, 0, K);
+						word.set(w);
+						counts.set(c);
+						context.write(word, counts);
+						break;
+					}
+				}
+			}
+			outputs.close();
+		}
+	}
+
+	/**
+	 * Adds up the counts of the splits; also used as the combiner.
+	 */
+	public static class CountsReducer extends Reducer<IntWritable, TopicCounts, IntWritable, TopicCounts> {
+
+		private final TopicCounts result = new TopicCounts();
+
+		public void reduce(IntWritable key, Iterable<TopicCounts> values, Context context) throws IOException, InterruptedException {
+			boolean first = true;
+			for (TopicCounts val : values) {
+				if(first) {
+					result.clear(val.get().length);
+					first = false;
+				}
+				result.add(val);
+			}
+			context.write(key, result);
+		}
+	}
+
+	/**
+	 * Read the vocabulary written by the first job, see {@link VocabularyPruning#load}.
+	 */
+	static Vocabulary loadVocabulary(Configuration conf, Path dir) throws IOException {
+		Vocabulary vocabulary = VocabularyPruning.load(conf, dir);
+		vocabulary.freeze();
+		return vocabulary;
+	}
+
+	/**
+	 * Read the topic--term counts written by an iteration.
+	 *
+	 * @return nw[w * K + k] instances of word w assigned to topic k
+	 */
+	static int[] loadCounts(Configuration conf, Path dir, int V, int K) throws IOException {
+		FileSystem fs = dir.getFileSystem(conf);
+		int[] nw = new int[V * K];
+		IntWritable word = new IntWritable();
+		TopicCounts counts = new TopicCounts();
+		for (FileStatus status : fs.listStatus(dir)) {
+			if(!status.getPath().getName().startsWith("part-"))
+				continue;
+			SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+			try {
+				while (reader.next(word, counts)) {
+					System.arraycopy(counts.get(), 0, nw, word.get() * K, K);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return nw;
+	}
+
+	static boolean vocabulary(Configuration conf, Path input, Path output) throws Exception {
+		Job job = Job.getInstance(conf, "review topics vocabulary");
+		job.setJarByClass(DistributedTopics.class);
+		job.setMapperClass(VocabularyMapper.class);
+		VocabularyPruning.setReducer(job);
+		job.setInputFormatClass(ReviewJsonInputFormat.class);
+		MultipleOutputs.addNamedOutput(job, DOCS, SequenceFileOutputFormat.class, LongWritable.class, Text.class);
+
+		FileInputFormat.addInputPath(job, input);
+		FileOutputFormat.setOutputPath(job, output);
+		return job.waitForCompletion(true);
+	}
+
+	static boolean iteration(Configuration conf, int iteration, Path input, Path output) throws Exception {
+		Job job = Job.getInstance(conf, "review topics iteration " + iteration);
+		job.setJarByClass(DistributedTopics.class);
+		job.getConfiguration().setInt(ITERATION_KEY, iteration);
+		job.setMapperClass(SampleMapper.class);
+		job.setCombinerClass(CountsReducer.class);
+		job.setReducerClass(CountsReducer.class);
+		job.setInputFormatClass(SequenceFileInputFormat.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+		MultipleOutputs.addNamedOutput(job, STATE, SequenceFileOutputFormat.class, LongWritable.class, TopicDocument.class);
+
+		job.setOutputKeyClass(IntWritable.class);
+		job.setOutputValueClass(TopicCounts.class);
+
+		FileInputFormat.addInputPath(job, input);
+		FileOutputFormat.setOutputPath(job, output);
+		return job.waitForCompletion(true);
+	}
+
+	/**
+	 * Run the vocabulary job and lda.iterations sampling iterations; the
+	 * intermediate files go to a sibling of the output that is removed at the end.
+	 */
+	public static boolean run(Configuration conf, Path input, Path output) throws Exception {
+		Path work = new Path(output.toString() + "-lda");
+		FileSystem fs = work.getFileSystem(conf);
+		int K = conf.getInt(TOPICS_KEY, 10);
+		int iterations = conf.getInt(ITERATIONS_KEY, 20);
+
+		Path vocabularyDir = new Path(work, "vocabulary");
+		if(!vocabulary(conf, input, vocabularyDir)) {
+			return false;
+		}
+		Vocabulary vocabulary = loadVocabulary(conf, vocabularyDir);
+		int V = vocabulary.size();
+		conf.set(VOCABULARY_PATH_KEY, vocabularyDir.toString());
+		conf.setInt(VOCABULARY_SIZE_KEY, V);
+
+		Path previous = null;
+		for (int i = 0; i <= iterations; i++) {
+			Path dir = new Path(work, "iteration-" + i);
+			Path states = i == 0 ? new Path(vocabularyDir, DOCS + "-m-*") : new Path(previous, STATE + "-m-*");
+			if(previous != null) {
+				conf.set(COUNTS_PATH_KEY, previous.toString());
+			}
+			if(!iteration(conf, i, states, dir)) {
+				return false;
+			}
+			if(previous != null) {
+				fs.delete(previous, true);
+			}
+			previous = dir;
+		}
+
+		int[] nw = loadCounts(conf, previous, V, K);
+		double beta = conf.getFloat(BETA_KEY, 0.5f);
+		int[] nwsum = new int[K];
+		for (int i = 0; i < nw.length; i++) {
+			nwsum[i % K] += nw[i];
+		}
+		double[][] phi = new double[K][V];
+		for (int w = 0; w < V; w++) {
+			for (int k = 0; k < K; k++) {
+				phi[k][w] = (nw[w * K + k] + beta) / (nwsum[k] + V * beta);
+			}
+		}
+		writeTopics(conf, phi, vocabulary, new Path(output, "part-r-00000"), conf.getInt(WORDS_KEY, 10));
+		LdaModel.write(conf, new Path(output, LdaModel.FILE_NAME), phi, vocabulary,
+				conf.getFloat(ALPHA_KEY, 2.0f), beta);
+		fs.delete(work, true);
+		return true;
+	}
+
+	static void writeTopics(Configuration conf, double[][] phi, Vocabulary vocabulary, Path path, int limit) throws IOException {
+		Writer out = new OutputStreamWriter(path.getFileSystem(conf).create(path), "UTF-8");
+		try {
+			LdaUtil.export(phi, vocabulary, limit, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		Path input = new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada");
+		Path output = new Path("/home/italo/Área de Trabalho/www/UFC/files/saida");
+
+		System.exit(run(conf, input, output) ? 0 : 1);
+	}
+}
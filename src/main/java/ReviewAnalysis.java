@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+import application.InMapperCounter;
+import application.IntSumCombiner;
+import application.NgramGenerator;
+import application.ReviewDates;
+import application.ReviewDates.Granularity;
+import application.ReviewJsonInputFormat;
+import application.ReviewTokenizer;
+import application.ReviewWritable;
+import application.TaggedKey;
+import application.TokenFilter;
+import application.VariablesJson;
+
+/**
+ * Runs several analyses of the reviews in one job, so the input is read and
+ * decoded once instead of once per job.<br>
+ * analysis.analyzers lists them, among words, ngrams, dates and tokens (all
+ * by default). Each one writes the lines of its own job to the named output of
+ * its name (words-r-00000, ...): words as {@link WordCount}, ngrams as
+ * {@link WordSequencyCount}, dates as {@link TemporalMapping}, every
+ * granularity of temporal.granularities in the same file, and tokens, from the
+ * mappers, the offset of each review and its words separated by commas, as
+ * {@link ReviewsTopics} shuffles them before training. The counting analyses
+ * share one {@link InMapperCounter} and the shuffle: their keys are
+ * {@link TaggedKey}s whose tag is the ordinal of the analysis.
+ */
+public class ReviewAnalysis {
+
+	public static final String ANALYZERS_KEY = "analysis.analyzers";
+	public static final String DEFAULT_ANALYZERS = "words,ngrams,dates,tokens";
+
+	public static enum Counter { MISSING_DATE }
+
+	public static enum Analysis {
+		WORDS {
+			@Override
+			Analyzer newAnalyzer() {
+				return new WordAnalyzer();
+			}
+		},
+		NGRAMS {
+			@Override
+			Analyzer newAnalyzer() {
+				return new NgramAnalyzer();
+			}
+		},
+		DATES {
+			@Override
+			Analyzer newAnalyzer() {
+				return new DateAnalyzer();
+			}
+		},
+		TOKENS {
+			@Override
+			Analyzer newAnalyzer() {
+				return new TokenAnalyzer();
+			}
+		};
+
+		abstract Analyzer newAnalyzer();
+
+		/**
+		 * @return the named output of the analysis
+		 */
+		public String output() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+
+		/**
+		 * @param names comma separated, case insensitive
+		 */
+		public static Analysis[] parse(String names) {
+			String[] parts = names.split(",");
+			Analysis[] result = new Analysis[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				result[i] = valueOf(parts[i].trim().toUpperCase(Locale.ROOT));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * One analysis of the scan.<br>
+	 * A counting analysis adds its keys with {@link #count} and formats the
+	 * sums in {@link #format}; others write their lines from the mappers with
+	 * {@link #write}.
+	 */
+	public static abstract class Analyzer {
+
+		private Analysis analysis;
+		private InMapperCounter counter;
+		private MultipleOutputs<?, ?> outputs;
+		private byte[] tagged = new byte[64];
+
+		/**
+		 * Called on both sides of the job.
+		 */
+		protected void configure(Configuration conf) throws IOException {
+		}
+
+		/**
+		 * Called in the mappers only, after configure.
+		 */
+		protected void setup(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+		}
+
+		/**
+		 * Analyse one review; json holds its decoded fields.
+		 */
+		protected abstract void map(LongWritable offset, ReviewWritable review, VariablesJson json) throws IOException, InterruptedException;
+
+		/**
+		 * @return the output line of a key counted count times, null to drop it
+		 */
+		protected String format(byte[] key, int offset, int length, int count) {
+			return null;
+		}
+
+		protected void count(byte[] key, int offset, int length) throws IOException, InterruptedException {
+			if (length + 1 > tagged.length) {
+				tagged = Arrays.copyOf(tagged, Math.max(length + 1, tagged.length * 2));
+			}
+			tagged[0] = (byte) analysis.ordinal();
+			System.arraycopy(key, offset, tagged, 1, length);
+			counter.add(tagged, 0, length + 1);
+		}
+
+		protected void write(Text line) throws IOException, InterruptedException {
+			outputs.write(analysis.output(), line, NullWritable.get());
+		}
+	}
+
+	static class WordAnalyzer extends Analyzer {
+
+		private TokenFilter filter;
+		private byte[] bytes = new byte[64];
+
+		@Override
+		protected void configure(Configuration conf) throws IOException {
+			filter = TokenFilter.get(conf);
+		}
+
+		@Override
+		protected void map(LongWritable offset, ReviewWritable review, VariablesJson json) throws IOException, InterruptedException {
+			if(review.getText().getLength() > 0) {
+				// lower-case ASCII words separated by single spaces, see WordCount
+				String cleaned = json.getCleanedContent();
+				int length = 0;
+				for (int i = 0; i <= cleaned.length(); i++) {
+					char c = i < cleaned.length() ? cleaned.charAt(i) : ' ';
+					if (c != ' ') {
+						if (length == bytes.length) {
+							bytes = Arrays.copyOf(bytes, length * 2);
+						}
+						bytes[length++] = (byte) c;
+					} else if (length > 0) {
+						if (filter.accept(cleaned, i - length, i)) {
+							count(bytes, 0, length);
+						}
+						length = 0;
+					}
+				}
+			}
+		}
+
+		@Override
+		protected String format(byte[] key, int offset, int length, int count) {
+			return new String(key, offset, length, StandardCharsets.US_ASCII) + "\t" + count;
+		}
+	}
+
+	static class NgramAnalyzer extends Analyzer {
+
+		private final NgramGenerator ngrams = new NgramGenerator();
+		private final StringBuilder surface = new StringBuilder();
+		private byte[] bytes = new byte[128];
+		private int minCount;
+
+		@Override
+		protected void configure(Configuration conf) {
+			minCount = conf.getInt(WordSequencyCount.MIN_COUNT_KEY, 5);
+		}
+
+		@Override
+		protected void map(LongWritable offset, ReviewWritable review, VariablesJson json) throws IOException, InterruptedException {
+			if(review.getText().getLength() > 0) {
+				int tokens = ngrams.tokenize(json.getText());
+				for (int first = 0; first < tokens - 1; first++) {
+					int max = Math.min(NgramGenerator.MAX_N, tokens - first);
+					surface.setLength(0);
+					ngrams.surface(first, NgramGenerator.MIN_N - 1, surface);
+					for (int n = NgramGenerator.MIN_N; n <= max; n++) {
+						// the n-gram is the (n - 1)-gram and one more word; the words are ASCII
+						ngrams.surface(first + n - 1, 1, surface.append(' '));
+						if (surface.length() > bytes.length) {
+							bytes = new byte[Math.max(surface.length(), bytes.length * 2)];
+						}
+						for (int i = 0; i < surface.length(); i++) {
+							bytes[i] = (byte) surface.charAt(i);
+						}
+						count(bytes, 0, surface.length());
+					}
+				}
+			}
+		}
+
+		@Override
+		protected String format(byte[] key, int offset, int length, int count) {
+			if (count <= minCount)
+				return null;
+			int words = 1;
+			for (int i = offset; i < offset + length; i++) {
+				if (key[i] == ' ')
+					words++;
+			}
+			return new String(key, offset, length, StandardCharsets.US_ASCII) + "\t" + words + "\t" + count;
+		}
+	}
+
+	static class DateAnalyzer extends Analyzer {
+
+		private final byte[] bytes = new byte[4];
+		private Granularity[] granularities;
+		private org.apache.hadoop.mapreduce.Counter missing;
+
+		@Override
+		protected void configure(Configuration conf) {
+			granularities = Granularity.parse(conf.get(TemporalMapping.GRANULARITIES_KEY, "day"));
+		}
+
+		@Override
+		protected void setup(TaskInputOutputContext<?, ?, ?, ?> context) {
+			missing = context.getCounter(Counter.MISSING_DATE);
+		}
+
+		@Override
+		protected void map(LongWritable offset, ReviewWritable review, VariablesJson json) throws IOException, InterruptedException {
+			int epochDay = review.getEpochDay();
+			if(epochDay == ReviewDates.INVALID) {
+				missing.increment(1);
+				return;
+			}
+			for (Granularity granularity : granularities) {
+				// big-endian, so the periods sort in time order
+				int k = TemporalMapping.key(granularity, granularity.bucket(epochDay));
+				bytes[0] = (byte) (k >>> 24);
+				bytes[1] = (byte) (k >>> 16);
+				bytes[2] = (byte) (k >>> 8);
+				bytes[3] = (byte) k;
+				count(bytes, 0, 4);
+			}
+		}
+
+		@Override
+		protected String format(byte[] key, int offset, int length, int count) {
+			int k = (key[offset] << 24) | ((key[offset + 1] & 0xFF) << 16) | ((key[offset + 2] & 0xFF) << 8) | (key[offset + 3] & 0xFF);
+			return TemporalMapping.granularity(k).format(TemporalMapping.bucket(k)) + "\t" + count;
+		}
+	}
+
+	static class TokenAnalyzer extends Analyzer {
+
+		private ReviewTokenizer tokenizer;
+		private final ArrayList<String> list = new ArrayList<String>();
+		private final Text line = new Text();
+
+		@Override
+		protected void setup(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+			tokenizer = new ReviewTokenizer(context);
+		}
+
+		@Override
+		protected void map(LongWritable offset, ReviewWritable review, VariablesJson json) throws IOException, InterruptedException {
+			if(review.getText().getLength() > 0) {
+				list.clear();
+				tokenizer.tokenize(json.getText(), list);
+				if(!list.isEmpty()) {
+					line.set(offset.get() + "\t" + String.join(",", list));
+					write(line);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the analyzers of the job, at the ordinal of their analysis
+	 */
+	static Analyzer[] analyzers(Configuration conf) throws IOException {
+		Analyzer[] analyzers = new Analyzer[Analysis.values().length];
+		for (Analysis analysis : Analysis.parse(conf.get(ANALYZERS_KEY, DEFAULT_ANALYZERS))) {
+			Analyzer analyzer = analysis.newAnalyzer();
+			analyzer.analysis = analysis;
+			analyzer.configure(conf);
+			analyzers[analysis.ordinal()] = analyzer;
+		}
+		return analyzers;
+	}
+
+	public static class AnalysisMapper extends Mapper<LongWritable, ReviewWritable, TaggedKey, IntWritable> {
+
+		private final TaggedKey tagged = new TaggedKey();
+		private final IntWritable count = new IntWritable();
+		private final VariablesJson json = new VariablesJson();
+		private final ArrayList<Analyzer> analyzers = new ArrayList<Analyzer>();
+		private InMapperCounter counter;
+		private MultipleOutputs<TaggedKey, IntWritable> outputs;
+
+		@Override
+		protected void setup(final Context context) throws IOException {
+			counter = new InMapperCounter(new InMapperCounter.Emitter() {
+				@Override
+				public void emit(byte[] key, int offset, int length, int sum) throws IOException, InterruptedException {
+					tagged.set(key, offset, length);
+					count.set(sum);
+					context.write(tagged, count);
+				}
+			}, context);
+			outputs = new MultipleOutputs<TaggedKey, IntWritable>(context);
+			for (Analyzer analyzer : analyzers(context.getConfiguration())) {
+				if(analyzer != null) {
+					analyzer.counter = counter;
+					analyzer.outputs = outputs;
+					analyzer.setup(context);
+					analyzers.add(analyzer);
+				}
+			}
+		}
+
+		@Override
+		protected void map(LongWritable key, ReviewWritable value, Context context) throws IOException, InterruptedException {
+			value.toVariablesJson(json);
+			for (Analyzer analyzer : analyzers) {
+				analyzer.map(key, value, json);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			counter.flush();
+			outputs.close();
+		}
+	}
+
+	public static class AnalysisReducer extends Reducer<TaggedKey, IntWritable, Text, NullWritable> {
+
+		private final Text line = new Text();
+		private Analyzer[] analyzers;
+		private MultipleOutputs<Text, NullWritable> outputs;
+
+		@Override
+		protected void setup(Context context) throws IOException {
+			analyzers = analyzers(context.getConfiguration());
+			outputs = new MultipleOutputs<Text, NullWritable>(context);
+		}
+
+		@Override
+		protected void reduce(TaggedKey key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+			int sum = 0;
+			for (IntWritable value : values) {
+				sum += value.get();
+			}
+			Analyzer analyzer = analyzers[key.getTag()];
+			String formatted = analyzer.format(key.getBytes(), 1, key.getLength() - 1, sum);
+			if(formatted != null) {
+				line.set(formatted);
+				outputs.write(analyzer.analysis.output(), line, NullWritable.get());
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			outputs.close();
+		}
+	}
+
+	public static boolean run(Configuration conf, Path input, Path output) throws Exception {
+		Job job = Job.getInstance(conf, "review analysis");
+		job.setJarByClass(ReviewAnalysis.class);
+		job.setMapperClass(AnalysisMapper.class);
+		job.setCombinerClass(IntSumCombiner.class);
+		job.setReducerClass(AnalysisReducer.class);
+		job.setInputFormatClass(ReviewJsonInputFormat.class);
+		// every line goes to a named output, no empty part files
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+		for (Analysis analysis : Analysis.values()) {
+			MultipleOutputs.addNamedOutput(job, analysis.output(), TextOutputFormat.class, Text.class, NullWritable.class);
+		}
+
+		job.setMapOutputKeyClass(TaggedKey.class);
+		job.setMapOutputValueClass(IntWritable.class);
+
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(NullWritable.class);
+
+		FileInputFormat.addInputPath(job, input);
+		FileOutputFormat.setOutputPath(job, output);
+		return job.waitForCompletion(true);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		Path input = new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada");
+		Path output = new Path("/home/italo/Área de Trabalho/www/UFC/files/saida");
+
+		System.exit(run(conf, input, output) ? 0 : 1);
+	}
+}
@@ -1,5 +1,4 @@
 import java.io.IOException;
-import java.util.StringTokenizer;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -11,51 +10,154 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
-import application.ReadDataFromJSONFILE2;
-import application.VariablesJson;
+import application.InMapperCounter;
+import application.IntSumCombiner;
+import application.ReviewDates;
+import application.ReviewDates.Granularity;
+import application.ReviewJsonInputFormat;
+import application.ReviewWritable;
 
+/**
+ * Counts the reviews of each day.<br>
+ * The shuffle keys are ints compared on their bytes: the granularity in the
+ * high bits and its bucket below, so the days come out in time order. With
+ * temporal.granularities set to several of day, week, month and year, every
+ * review is counted in each of them in the same pass, and each granularity
+ * goes to its own named output (week-r-00000, ...).
+ */
 public class TemporalMapping {
 
+  public static final String GRANULARITIES_KEY = "temporal.granularities";
+
+  /**
+   * bucket bits of a key; buckets are offset by BIAS to stay non-negative<br>
+   */
+  static final int BUCKET_BITS = 29;
+  static final int BIAS = 1 << 28;
+
+  static int key(Granularity granularity, int bucket) {
+    return (granularity.ordinal() << BUCKET_BITS) | (bucket + BIAS);
+  }
+
+  static Granularity granularity(int key) {
+    return Granularity.values()[key >>> BUCKET_BITS];
+  }
+
+  static int bucket(int key) {
+    return (key & ((1 << BUCKET_BITS) - 1)) - BIAS;
+  }
+
   public static class TokenizerMapper
-       extends Mapper<Object, Text, Text, IntWritable>{
+       extends Mapper<Object, ReviewWritable, IntWritable, IntWritable>{
+
+    public static enum Counter { MISSING_DATE }
 
-    private final static IntWritable one = new IntWritable(1);
-    private Text word = new Text();
+    private final IntWritable period = new IntWritable();
+    private final IntWritable count = new IntWritable();
+    private final byte[] bytes = new byte[4];
+    private Granularity[] granularities;
+    private InMapperCounter counter;
 
-    public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-		VariablesJson variablesJson = ReadDataFromJSONFILE2.getVariable(value.toString());
-		context.write(new Text(variablesJson.dateFormmater()), new IntWritable(1));
+    @Override
+    protected void setup(final Context context) {
+    	granularities = Granularity.parse(context.getConfiguration().get(GRANULARITIES_KEY, "day"));
+    	counter = new InMapperCounter(new InMapperCounter.Emitter() {
+    		@Override
+    		public void emit(byte[] key, int offset, int length, int sum) throws IOException, InterruptedException {
+    			period.set((key[offset] << 24) | ((key[offset + 1] & 0xFF) << 16) | ((key[offset + 2] & 0xFF) << 8) | (key[offset + 3] & 0xFF));
+    			count.set(sum);
+    			context.write(period, count);
+    		}
+    	}, context);
+    }
+
+    public void map(Object key, ReviewWritable value, Context context) throws IOException, InterruptedException {
+		int epochDay = value.getEpochDay();
+		if(epochDay == ReviewDates.INVALID) {
+			context.getCounter(Counter.MISSING_DATE).increment(1);
+			return;
+		}
+		for (Granularity granularity : granularities) {
+			int k = key(granularity, granularity.bucket(epochDay));
+			bytes[0] = (byte) (k >>> 24);
+			bytes[1] = (byte) (k >>> 16);
+			bytes[2] = (byte) (k >>> 8);
+			bytes[3] = (byte) k;
+			counter.add(bytes, 0, 4);
+		}
 	}
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+    	counter.flush();
+    }
   }
 
   public static class IntSumReducer
-       extends Reducer<Text,IntWritable,Text,IntWritable> {
-	  public void reduce(Text key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+       extends Reducer<IntWritable,IntWritable,Text,NullWritable> {
+
+	  private MultipleOutputs<Text, NullWritable> outputs;
+
+	  @Override
+	  protected void setup(Context context) {
+		  if(Granularity.parse(context.getConfiguration().get(GRANULARITIES_KEY, "day")).length > 1) {
+			  outputs = new MultipleOutputs<Text, NullWritable>(context);
+		  }
+	  }
+
+	  public void reduce(IntWritable key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
 			int sum = 0;
 			for (IntWritable val : values) {
 				sum += val.get();
 			}
-			context.write(new Text(key + "\t" + sum), null);
+			Granularity granularity = granularity(key.get());
+			Text line = new Text(granularity.format(bucket(key.get())) + "\t" + sum);
+			if(outputs == null) {
+				context.write(line, null);
+			} else {
+				outputs.write(granularity.name().toLowerCase(), line, NullWritable.get());
+			}
 		}
+
+	  @Override
+	  protected void cleanup(Context context) throws IOException, InterruptedException {
+		  if(outputs != null) {
+			  outputs.close();
+		  }
+	  }
   }
 
-  public static void main(String[] args) throws Exception {
-    Configuration conf = new Configuration();
-    Job job = Job.getInstance(conf, "word count");
+  public static boolean run(Configuration conf, Path input, Path output) throws Exception {
+    Job job = Job.getInstance(conf, "temporal mapping");
     job.setJarByClass(TemporalMapping.class);
     job.setMapperClass(TokenizerMapper.class);
+    job.setCombinerClass(IntSumCombiner.class);
     job.setReducerClass(IntSumReducer.class);
+    job.setInputFormatClass(ReviewJsonInputFormat.class);
+    for (Granularity granularity : Granularity.values()) {
+    	MultipleOutputs.addNamedOutput(job, granularity.name().toLowerCase(), TextOutputFormat.class, Text.class, NullWritable.class);
+    }
 
-    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputKeyClass(IntWritable.class);
 	job.setMapOutputValueClass(IntWritable.class);
-    
+	job.setSortComparatorClass(IntWritable.Comparator.class);
+
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(NullWritable.class);
-    
-    FileInputFormat.addInputPath(job, new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada"));
-    FileOutputFormat.setOutputPath(job, new Path("/home/italo/Área de Trabalho/www/UFC/files/saida"));
-    
-    System.exit(job.waitForCompletion(true) ? 0 : 1);
+
+    FileInputFormat.addInputPath(job, input);
+    FileOutputFormat.setOutputPath(job, output);
+    return job.waitForCompletion(true);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    Path input = new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada");
+    Path output = new Path("/home/italo/Área de Trabalho/www/UFC/files/saida");
+
+    System.exit(run(conf, input, output) ? 0 : 1);
   }
-}
\ No newline at end of file
+}
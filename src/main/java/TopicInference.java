@@ -0,0 +1,138 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import application.LdaModel;
+import application.RandomStream;
+import application.ReviewJsonInputFormat;
+import application.ReviewTokenizer;
+import application.ReviewWritable;
+import application.TopicInferencer;
+import application.TopicVector;
+import application.VariablesJson;
+
+/**
+ * Tags reviews with the topics of a trained model, without training.<br>
+ * A map-only job: the model written by {@link ReviewsTopics} or
+ * {@link DistributedTopics} goes to every node through the distributed cache
+ * and is mapped once per task, see {@link LdaModel}. Each review is tokenized
+ * as for training, its words outside the vocabulary of the model are
+ * dropped, and its topic proportions are written to a SequenceFile keyed by
+ * the id of the review.
+ */
+public class TopicInference {
+
+	public static final String MODEL_KEY = "lda.model";
+	public static final String ITERATIONS_KEY = "lda.inference.iterations";
+	public static final String SEED_KEY = "lda.seed";
+
+	public static enum Counter { REVIEWS, EMPTY_REVIEWS, UNKNOWN_WORDS }
+
+	public static class InferenceMapper extends Mapper<LongWritable, ReviewWritable, Text, TopicVector> {
+
+		private ReviewTokenizer tokenizer;
+		private TopicInferencer inferencer;
+		private final VariablesJson variablesJson = new VariablesJson();
+		private final ArrayList<String> list = new ArrayList<String>();
+		private final TopicVector theta = new TopicVector();
+		private int[] doc = new int[256];
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			tokenizer = new ReviewTokenizer(context);
+			LdaModel model = LdaModel.open(localModel(conf));
+			RandomStream random = conf.get(SEED_KEY) == null ? new RandomStream()
+					: new RandomStream(conf.getLong(SEED_KEY, 0) + context.getTaskAttemptID().getTaskID().getId());
+			inferencer = new TopicInferencer(model, conf.getInt(ITERATIONS_KEY, 50), random);
+			theta.clear(model.getK());
+		}
+
+		public void map(LongWritable key, ReviewWritable value, Context context) throws IOException, InterruptedException {
+			if(value.getText().getLength() == 0) {
+				return;
+			}
+			value.toVariablesJson(variablesJson);
+			list.clear();
+			tokenizer.tokenize(variablesJson.getText(), list);
+			int length = 0;
+			for (String word : list) {
+				int id = inferencer.getModel().indexOf(word);
+				if(id < 0) {
+					context.getCounter(Counter.UNKNOWN_WORDS).increment(1);
+					continue;
+				}
+				if(length == doc.length) {
+					doc = Arrays.copyOf(doc, doc.length * 2);
+				}
+				doc[length++] = id;
+			}
+			if(length == 0) {
+				context.getCounter(Counter.EMPTY_REVIEWS).increment(1);
+			}
+			inferencer.infer(doc, length, theta.get());
+			context.getCounter(Counter.REVIEWS).increment(1);
+			context.write(value.getId(), theta);
+		}
+	}
+
+	/**
+	 * @return the copy of the model the distributed cache made on this node
+	 */
+	static File localModel(Configuration conf) throws IOException {
+		String name = new Path(conf.get(MODEL_KEY)).getName();
+		Path[] files = DistributedCache.getLocalCacheFiles(conf);
+		if(files != null) {
+			for (Path file : files) {
+				if(file.getName().equals(name)) {
+					return new File(file.toUri().getPath());
+				}
+			}
+		}
+		throw new IOException("model " + conf.get(MODEL_KEY) + " is not in the distributed cache");
+	}
+
+	/**
+	 * @param model a model file, see {@link LdaModel}
+	 */
+	public static boolean run(Configuration conf, Path model, Path input, Path output) throws Exception {
+		Job job = Job.getInstance(conf, "review topics inference");
+		job.setJarByClass(TopicInference.class);
+		model = model.getFileSystem(conf).makeQualified(model);
+		job.getConfiguration().set(MODEL_KEY, model.toString());
+		DistributedCache.addCacheFile(model.toUri(), job.getConfiguration());
+
+		job.setMapperClass(InferenceMapper.class);
+		job.setNumReduceTasks(0);
+		job.setInputFormatClass(ReviewJsonInputFormat.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(TopicVector.class);
+
+		FileInputFormat.addInputPath(job, input);
+		FileOutputFormat.setOutputPath(job, output);
+		return job.waitForCompletion(true);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		Path model = new Path("/home/italo/Área de Trabalho/www/UFC/files/modelo/" + LdaModel.FILE_NAME);
+		Path input = new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada");
+		Path output = new Path("/home/italo/Área de Trabalho/www/UFC/files/saida");
+
+		System.exit(run(conf, model, input, output) ? 0 : 1);
+	}
+}
@@ -0,0 +1,343 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import application.InMapperCounter;
+import application.ReviewJsonInputFormat;
+import application.ReviewTokenizer;
+import application.ReviewWritable;
+import application.TermFrequency;
+import application.VariablesJson;
+import application.Vocabulary;
+
+/**
+ * Builds the vocabulary of the topic models from the term and document
+ * frequencies of the reviews.<br>
+ * The mappers tokenize the reviews as for training and count, in the mapper,
+ * the occurrences of each word and the reviews it appears in; a single
+ * reducer adds them up and keeps the words found in at least
+ * lda.vocabulary.min.df reviews and at most lda.vocabulary.max.df of them,
+ * then the lda.vocabulary.max.words most frequent of those. The output has
+ * one line per word, word, documents and occurrences separated by tabs, in
+ * the order of the term ids: the most frequent word first. Training jobs given
+ * it through lda.vocabulary drop every other word in their mappers, see
+ * {@link ReviewsTopics}; {@link DistributedTopics} prunes its own vocabulary
+ * with the same keys.
+ */
+public class VocabularyPruning {
+
+	/**
+	 * minimum number of reviews a word appears in, 1 by default<br>
+	 */
+	public static final String MIN_DF_KEY = "lda.vocabulary.min.df";
+
+	/**
+	 * maximum fraction of the reviews a word appears in, 1 by default; a
+	 * number of reviews when above 1<br>
+	 */
+	public static final String MAX_DF_KEY = "lda.vocabulary.max.df";
+
+	/**
+	 * number of words kept, 0 (default) for all of them<br>
+	 */
+	public static final String MAX_WORDS_KEY = "lda.vocabulary.max.words";
+
+	/**
+	 * output of this job, for the training jobs<br>
+	 */
+	public static final String VOCABULARY_KEY = "lda.vocabulary";
+
+	public static enum Counter { DOCUMENTS, TERMS, RARE_TERMS, COMMON_TERMS, TRUNCATED_TERMS, KEPT_TERMS, DROPPED_WORDS }
+
+	/**
+	 * Mapper side of the job: the occurrences and the documents of each word
+	 * are counted in one {@link InMapperCounter}, the UTF-8 of the word being
+	 * followed by a byte telling which of the two it is. On flush the counts
+	 * are written as {@link TermFrequency} values, and the number of documents
+	 * and words of the task under the empty word, which sorts first.
+	 */
+	public static class FrequencyCounter {
+
+		private static final byte OCCURRENCES = 0;
+		private static final byte DOCUMENTS = 1;
+
+		private final TaskInputOutputContext<?, ?, Text, TermFrequency> context;
+		private final InMapperCounter counter;
+		private final Set<String> seen = new HashSet<String>();
+		private final Text word = new Text();
+		private final TermFrequency frequency = new TermFrequency();
+		private final byte[] tag = new byte[1];
+		private long documents;
+		private long occurrences;
+
+		public FrequencyCounter(final TaskInputOutputContext<?, ?, Text, TermFrequency> context) {
+			this.context = context;
+			counter = new InMapperCounter(new InMapperCounter.Emitter() {
+				@Override
+				public void emit(byte[] bytes, int offset, int length, int count) throws IOException, InterruptedException {
+					word.set(bytes, offset, length - 1);
+					if(bytes[offset + length - 1] == DOCUMENTS) {
+						frequency.set(count, 0);
+					} else {
+						frequency.set(0, count);
+					}
+					context.write(word, frequency);
+				}
+			}, context);
+		}
+
+		/**
+		 * Count the words of one document.
+		 */
+		public void add(List<String> words) throws IOException, InterruptedException {
+			seen.clear();
+			for (String w : words) {
+				word.set(w);
+				tag[0] = OCCURRENCES;
+				word.append(tag, 0, 1);
+				counter.add(word.getBytes(), 0, word.getLength());
+				if(seen.add(w)) {
+					word.getBytes()[word.getLength() - 1] = DOCUMENTS;
+					counter.add(word.getBytes(), 0, word.getLength());
+				}
+			}
+			documents++;
+			occurrences += words.size();
+		}
+
+		public void flush() throws IOException, InterruptedException {
+			counter.flush();
+			word.clear();
+			frequency.set(documents, occurrences);
+			context.write(word, frequency);
+			documents = 0;
+			occurrences = 0;
+		}
+	}
+
+	public static class PruningMapper extends Mapper<LongWritable, ReviewWritable, Text, TermFrequency> {
+
+		private ReviewTokenizer tokenizer;
+		private FrequencyCounter counter;
+		private final VariablesJson variablesJson = new VariablesJson();
+		private final ArrayList<String> list = new ArrayList<String>();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			tokenizer = new ReviewTokenizer(context);
+			counter = new FrequencyCounter(context);
+		}
+
+		public void map(LongWritable key, ReviewWritable value, Context context) throws IOException, InterruptedException {
+			if(value.getText().getLength() > 0) {
+				value.toVariablesJson(variablesJson);
+				list.clear();
+				tokenizer.tokenize(variablesJson.getText(), list);
+				if(!list.isEmpty()) {
+					counter.add(list);
+				}
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			counter.flush();
+		}
+	}
+
+	public static class FrequencyCombiner extends Reducer<Text, TermFrequency, Text, TermFrequency> {
+
+		private final TermFrequency sum = new TermFrequency();
+
+		@Override
+		protected void reduce(Text key, Iterable<TermFrequency> values, Context context) throws IOException, InterruptedException {
+			sum.set(0, 0);
+			for (TermFrequency value : values) {
+				sum.add(value);
+			}
+			context.write(key, sum);
+		}
+	}
+
+	/**
+	 * Applies the thresholds to each word and writes the kept ones by
+	 * decreasing document frequency at the end of the task. Must be the only
+	 * reducer: the number of documents comes first, under the empty word, and
+	 * the limit on the number of words is global. With a limit, only that many
+	 * words are held, in a heap whose root is the least frequent.
+	 */
+	public static class PruningReducer extends Reducer<Text, TermFrequency, Text, TermFrequency> {
+
+		private static final Comparator<Term> FREQUENT_FIRST = new Comparator<Term>() {
+			@Override
+			public int compare(Term a, Term b) {
+				if(a.documents != b.documents)
+					return a.documents > b.documents ? -1 : 1;
+				if(a.occurrences != b.occurrences)
+					return a.occurrences > b.occurrences ? -1 : 1;
+				return a.word.compareTo(b.word);
+			}
+		};
+
+		private static class Term {
+			final String word;
+			final long documents;
+			final long occurrences;
+
+			Term(String word, long documents, long occurrences) {
+				this.word = word;
+				this.documents = documents;
+				this.occurrences = occurrences;
+			}
+		}
+
+		private long minDf;
+		private float maxDf;
+		private int maxWords;
+		private long maxDocuments = Long.MAX_VALUE;
+		private List<Term> kept;
+		private PriorityQueue<Term> heap;
+		private final TermFrequency sum = new TermFrequency();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			Configuration conf = context.getConfiguration();
+			minDf = conf.getInt(MIN_DF_KEY, 1);
+			maxDf = conf.getFloat(MAX_DF_KEY, 1f);
+			maxWords = conf.getInt(MAX_WORDS_KEY, 0);
+			if(maxWords > 0) {
+				heap = new PriorityQueue<Term>(maxWords + 1, Collections.reverseOrder(FREQUENT_FIRST));
+			} else {
+				kept = new ArrayList<Term>();
+			}
+		}
+
+		@Override
+		protected void reduce(Text key, Iterable<TermFrequency> values, Context context) throws IOException, InterruptedException {
+			sum.set(0, 0);
+			for (TermFrequency value : values) {
+				sum.add(value);
+			}
+			if(key.getLength() == 0) {
+				context.getCounter(Counter.DOCUMENTS).increment(sum.getDocuments());
+				maxDocuments = maxDf > 1 ? (long) maxDf : (long) Math.floor(maxDf * sum.getDocuments());
+				return;
+			}
+			context.getCounter(Counter.TERMS).increment(1);
+			if(sum.getDocuments() < minDf) {
+				context.getCounter(Counter.RARE_TERMS).increment(1);
+				return;
+			}
+			if(sum.getDocuments() > maxDocuments) {
+				context.getCounter(Counter.COMMON_TERMS).increment(1);
+				return;
+			}
+			Term term = new Term(key.toString(), sum.getDocuments(), sum.getOccurrences());
+			if(heap == null) {
+				kept.add(term);
+				return;
+			}
+			heap.add(term);
+			if(heap.size() > maxWords) {
+				heap.poll();
+				context.getCounter(Counter.TRUNCATED_TERMS).increment(1);
+			}
+		}
+
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			if(heap != null) {
+				kept = new ArrayList<Term>(heap);
+				heap = null;
+			}
+			Collections.sort(kept, FREQUENT_FIRST);
+			Text word = new Text();
+			for (Term term : kept) {
+				word.set(term.word);
+				sum.set(term.documents, term.occurrences);
+				context.write(word, sum);
+			}
+			context.getCounter(Counter.KEPT_TERMS).increment(kept.size());
+		}
+	}
+
+	/**
+	 * Read a vocabulary written by this job, term ids in line order. Lines of
+	 * a single word, without frequencies, are read too.
+	 */
+	public static Vocabulary load(Configuration conf, Path dir) throws IOException {
+		FileSystem fs = dir.getFileSystem(conf);
+		Vocabulary vocabulary = new Vocabulary();
+		for (FileStatus status : fs.listStatus(dir)) {
+			if(!status.getPath().getName().startsWith("part-"))
+				continue;
+			BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(status.getPath()), "UTF-8"));
+			try {
+				String line;
+				while ((line = br.readLine()) != null) {
+					int tab = line.indexOf('\t');
+					vocabulary.add(tab < 0 ? line : line.substring(0, tab));
+				}
+			} finally {
+				br.close();
+			}
+		}
+		return vocabulary;
+	}
+
+	/**
+	 * Use the combiner and the reducer of this job in the job, writing the
+	 * vocabulary as its output.
+	 */
+	static void setReducer(Job job) {
+		job.setCombinerClass(FrequencyCombiner.class);
+		job.setReducerClass(PruningReducer.class);
+		job.setNumReduceTasks(1);
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(TermFrequency.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(TermFrequency.class);
+	}
+
+	public static boolean run(Configuration conf, Path input, Path output) throws Exception {
+		Job job = Job.getInstance(conf, "review vocabulary");
+		job.setJarByClass(VocabularyPruning.class);
+		job.setMapperClass(PruningMapper.class);
+		setReducer(job);
+		job.setInputFormatClass(ReviewJsonInputFormat.class);
+
+		FileInputFormat.addInputPath(job, input);
+		FileOutputFormat.setOutputPath(job, output);
+		return job.waitForCompletion(true);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		conf.setInt(MIN_DF_KEY, 2);
+		conf.setFloat(MAX_DF_KEY, 0.5f);
+		Path input = new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada");
+		Path output = new Path("/home/italo/Área de Trabalho/www/UFC/files/vocabulario");
+
+		System.exit(run(conf, input, output) ? 0 : 1);
+	}
+}
@@ -1,5 +1,6 @@
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -12,28 +13,77 @@ import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 
-import application.ReadDataFromJSONFILE2;
+import application.InMapperCounter;
+import application.IntSumCombiner;
+import application.KeySampler;
+import application.ReviewJsonInputFormat;
+import application.ReviewWritable;
+import application.TokenFilter;
 import application.VariablesJson;
 
+/**
+ * Counts the words of the reviews.<br>
+ * With total.order.reducers above 1 the words are range partitioned on split
+ * points sampled from the input, see {@link KeySampler}, so the part files
+ * together are in word order without a sort job.<br>
+ * Frequent words are not salted over several reducers: the mapper counts in
+ * memory and the combiner sums, so a word reaches the shuffle once per map
+ * task and flush, as often as any word found in every split.
+ */
 public class WordCount {
 
   public static class TokenizerMapper
-       extends Mapper<Object, Text, Text, IntWritable>{
+       extends Mapper<Object, ReviewWritable, Text, IntWritable>{
 
-    private final static IntWritable one = new IntWritable(1);
+    private final VariablesJson review = new VariablesJson();
+    private final Text word = new Text();
+    private final IntWritable count = new IntWritable();
+    private byte[] bytes = new byte[64];
+    private InMapperCounter counter;
+    private TokenFilter filter;
 
-    public void map(Object key, Text value, Context context
+    @Override
+    protected void setup(final Context context) throws IOException {
+    	filter = TokenFilter.get(context.getConfiguration());
+    	counter = new InMapperCounter(new InMapperCounter.Emitter() {
+    		@Override
+    		public void emit(byte[] key, int offset, int length, int sum) throws IOException, InterruptedException {
+    			word.set(key, offset, length);
+    			count.set(sum);
+    			context.write(word, count);
+    		}
+    	}, context);
+    }
+
+    public void map(Object key, ReviewWritable value, Context context
                     ) throws IOException, InterruptedException {    
-      VariablesJson review = ReadDataFromJSONFILE2.getVariable(value.toString());
-      
-      if(review.getText() != null) {
-    	  StringTokenizer itr = new StringTokenizer(review.getCleanedContent());
-    	  while (itr.hasMoreTokens()) {
-    	        String word = itr.nextToken();
-    	        context.write(new Text(word), one);
-    	      }
+      if(value.getText().getLength() > 0) {
+    	  value.toVariablesJson(review);
+    	  // the cleaned content is lower-case ASCII words separated by single spaces;
+    	  // the stop words go, as in the topic jobs
+    	  String cleaned = review.getCleanedContent();
+    	  int length = 0;
+    	  for (int i = 0; i <= cleaned.length(); i++) {
+    		  char c = i < cleaned.length() ? cleaned.charAt(i) : ' ';
+    		  if (c != ' ') {
+    			  if (length == bytes.length) {
+    				  bytes = Arrays.copyOf(bytes, length * 2);
+    			  }
+    			  bytes[length++] = (byte) c;
+    		  } else if (length > 0) {
+    			  if (filter.accept(cleaned, i - length, i)) {
+    				  counter.add(bytes, 0, length);
+    			  }
+    			  length = 0;
+    		  }
+    	  }
       }
     }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+    	counter.flush();
+    }
   }
 
   public static class IntSumReducer
@@ -49,12 +99,43 @@ public class WordCount {
     }
   }
 
-  public static void main(String[] args) throws Exception {
-    Configuration conf = new Configuration();
+  /**
+   * The words the mapper counts, for the split points of the reducers.
+   */
+  static class WordSampler extends KeySampler<ReviewWritable, Text> {
+
+    private final VariablesJson review = new VariablesJson();
+    private final TokenFilter filter;
+
+    WordSampler(Configuration conf) throws IOException {
+    	filter = TokenFilter.get(conf);
+    }
+
+    @Override
+    protected void keys(ReviewWritable value, List<Text> keys) {
+      if(value.getText().getLength() > 0) {
+    	  value.toVariablesJson(review);
+    	  String cleaned = review.getCleanedContent();
+    	  int start = 0;
+    	  for (int i = 0; i <= cleaned.length(); i++) {
+    		  if (i == cleaned.length() || cleaned.charAt(i) == ' ') {
+    			  if (i > start && filter.accept(cleaned, start, i)) {
+    				  keys.add(new Text(cleaned.substring(start, i)));
+    			  }
+    			  start = i + 1;
+    		  }
+    	  }
+      }
+    }
+  }
+
+  public static boolean run(Configuration conf, Path input, Path output) throws Exception {
     Job job = Job.getInstance(conf, "word count");
     job.setJarByClass(WordCount.class);
     job.setMapperClass(TokenizerMapper.class);
+    job.setCombinerClass(IntSumCombiner.class);
     job.setReducerClass(IntSumReducer.class);
+    job.setInputFormatClass(ReviewJsonInputFormat.class);
 
     job.setMapOutputKeyClass(Text.class);
 	job.setMapOutputValueClass(IntWritable.class);
@@ -62,9 +143,24 @@ public class WordCount {
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(NullWritable.class);
     
-    FileInputFormat.addInputPath(job, new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada"));
-    FileOutputFormat.setOutputPath(job, new Path("/home/italo/Área de Trabalho/www/UFC/files/saida"));
-    
-    System.exit(job.waitForCompletion(true) ? 0 : 1);
+    FileInputFormat.addInputPath(job, input);
+    FileOutputFormat.setOutputPath(job, output);
+
+    Path partitions = new Path(output.toString() + "-partitions");
+    boolean sorted = KeySampler.isEnabled(conf)
+    		&& new WordSampler(job.getConfiguration()).setPartitions(job, partitions);
+    boolean done = job.waitForCompletion(true);
+    if (sorted) {
+    	partitions.getFileSystem(conf).delete(partitions, false);
+    }
+    return done;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    Path input = new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada");
+    Path output = new Path("/home/italo/Área de Trabalho/www/UFC/files/saida");
+
+    System.exit(run(conf, input, output) ? 0 : 1);
   }
 }
\ No newline at end of file
@@ -1,74 +1,422 @@
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 
-import application.ReadDataFromJSONFILE2;
-import application.VariablesJson;
+import application.CountMinSketch;
+import application.InMapperCounter;
+import application.IntSumCombiner;
+import application.KeySampler;
+import application.LongIntHashMap;
+import application.NgramGenerator;
+import application.NgramKey;
+import application.ReviewJsonInputFormat;
+import application.ReviewWritable;
 
+/**
+ * Counts the 2- to 5-grams of the reviews in two jobs. The first one shuffles
+ * only 9-byte n-gram fingerprints and keeps those seen more than
+ * ngram.min.count times. The second one reads the reviews again and builds the
+ * text of the surviving n-grams only, once per map task.<br>
+ * With ngram.sketch set, a pre-pass first builds a Count-Min sketch of the
+ * n-grams of every split and merges them, and the first job then drops before
+ * the shuffle the n-grams whose estimate does not exceed ngram.min.count.
+ * The sketch never underestimates, so no frequent n-gram is lost and the
+ * output is the same as the exact run; ngram.sketch.epsilon and
+ * ngram.sketch.delta only decide how many rare n-grams still get through.
+ * With total.order.reducers above 1 the second job is range partitioned on
+ * n-grams sampled from the input, see {@link KeySampler}, and its part files
+ * together are in n-gram order.
+ */
 public class WordSequencyCount {
 
+  public static final String MIN_COUNT_KEY = "ngram.min.count";
+  public static final String COUNTS_PATH_KEY = "ngram.counts.path";
+  public static final String SKETCH_KEY = "ngram.sketch";
+  public static final String SKETCH_EPSILON_KEY = "ngram.sketch.epsilon";
+  public static final String SKETCH_DELTA_KEY = "ngram.sketch.delta";
+  public static final String SKETCH_PATH_KEY = "ngram.sketch.path";
+
+  public static final double DEFAULT_SKETCH_EPSILON = 2e-6;
+  public static final double DEFAULT_SKETCH_DELTA = 0.05;
+
+  public static enum Counter { SKETCH_DROPPED }
+
+  /**
+   * Builds the sketch of the n-grams of one split and writes it at the end of the task.
+   */
+  public static class SketchMapper
+       extends Mapper<Object, ReviewWritable, NullWritable, CountMinSketch>{
+
+    private final NgramGenerator ngrams = new NgramGenerator();
+    private final long[] fingerprints = new long[NgramGenerator.MAX_N + 1];
+    private CountMinSketch sketch;
+
+    @Override
+    protected void setup(Context context) {
+    	sketch = newSketch(context.getConfiguration());
+    }
+
+    public void map(Object key, ReviewWritable value, Context context
+                    ) throws IOException, InterruptedException {
+      if(value.getText().getLength() > 0) {
+			int tokens = ngrams.tokenize(value.getText().toString());
+			for (int first = 0; first < tokens - 1; first++) {
+				int max = ngrams.fingerprints(first, fingerprints);
+				for (int n = NgramGenerator.MIN_N; n <= max; n++) {
+					sketch.add(fingerprints[n], 1);
+				}
+			}
+		}
+	}
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+    	context.write(NullWritable.get(), sketch);
+    }
+}
+
+  public static class SketchReducer
+       extends Reducer<NullWritable,CountMinSketch,NullWritable,CountMinSketch> {
+    public void reduce(NullWritable key, Iterable<CountMinSketch> values,
+                       Context context
+                       ) throws IOException, InterruptedException {
+    	CountMinSketch merged = newSketch(context.getConfiguration());
+		for (CountMinSketch val : values) {
+			merged.merge(val);
+		}
+		context.write(key, merged);
+	}
+}
+
   public static class TokenizerMapper
-       extends Mapper<Object, Text, Text, IntWritable>{
-
-    private final static IntWritable one = new IntWritable(1);
-    private Text word = new Text();
-
-    public void map(Object key, Text value, Context context
-                    ) throws IOException, InterruptedException {    
-      VariablesJson review = ReadDataFromJSONFILE2.getVariable(value.toString());
-      
-      if(review.getText() != null) {
-			ArrayList<String> sentences = review.getSentences();
-			for (String sentence : sentences) {
-				context.write(new Text(sentence), new IntWritable(1));
+       extends Mapper<Object, ReviewWritable, NgramKey, IntWritable>{
+
+    private final NgramKey ngram = new NgramKey();
+    private final IntWritable count = new IntWritable();
+    private final NgramGenerator ngrams = new NgramGenerator();
+    private final long[] fingerprints = new long[NgramGenerator.MAX_N + 1];
+    private final byte[] bytes = new byte[NgramKey.SIZE];
+    private InMapperCounter counter;
+    private CountMinSketch sketch;
+    private int minCount;
+    private long dropped;
+
+    @Override
+    protected void setup(final Context context) throws IOException {
+    	Configuration conf = context.getConfiguration();
+    	if (conf.get(SKETCH_PATH_KEY) != null) {
+    		sketch = loadSketch(conf);
+    		minCount = conf.getInt(MIN_COUNT_KEY, 5);
+    	}
+    	counter = new InMapperCounter(new InMapperCounter.Emitter() {
+    		@Override
+    		public void emit(byte[] key, int offset, int length, int sum) throws IOException, InterruptedException {
+    			long fingerprint = 0;
+    			for (int i = 0; i < 8; i++) {
+    				fingerprint = (fingerprint << 8) | (key[offset + i] & 0xFF);
+    			}
+    			ngram.set(fingerprint, key[offset + 8]);
+    			count.set(sum);
+    			context.write(ngram, count);
+    		}
+    	}, context);
+    }
+
+    public void map(Object key, ReviewWritable value, Context context
+                    ) throws IOException, InterruptedException {
+      if(value.getText().getLength() > 0) {
+			int tokens = ngrams.tokenize(value.getText().toString());
+			for (int first = 0; first < tokens - 1; first++) {
+				int max = ngrams.fingerprints(first, fingerprints);
+				for (int n = NgramGenerator.MIN_N; n <= max; n++) {
+					long fingerprint = fingerprints[n];
+					if (sketch != null && sketch.estimate(fingerprint) <= minCount) {
+						dropped++;
+						continue;
+					}
+					for (int i = 7; i >= 0; i--) {
+						bytes[i] = (byte) fingerprint;
+						fingerprint >>>= 8;
+					}
+					bytes[8] = (byte) n;
+					counter.add(bytes, 0, NgramKey.SIZE);
+				}
 			}
 		}
 	}
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+    	counter.flush();
+    	context.getCounter(Counter.SKETCH_DROPPED).increment(dropped);
+    }
 }
 
   public static class IntSumReducer
-       extends Reducer<Text,IntWritable,Text,IntWritable> {
-    public void reduce(Text key, Iterable<IntWritable> values,
+       extends Reducer<NgramKey,IntWritable,NgramKey,IntWritable> {
+    private final IntWritable result = new IntWritable();
+    private int minCount;
+
+    @Override
+    protected void setup(Context context) {
+    	minCount = context.getConfiguration().getInt(MIN_COUNT_KEY, 5);
+    }
+
+    public void reduce(NgramKey key, Iterable<IntWritable> values,
                        Context context
                        ) throws IOException, InterruptedException {
     	int count = 0;
 		for (IntWritable val : values) {
 			count += val.get();
 		}
-		if(count > 5) {
-			int length = new StringTokenizer(key.toString()).countTokens();
-			context.write(new Text(key + "\t" + length + "\t" + count), null);
+		if(count > minCount) {
+			result.set(count);
+			context.write(key, result);
 		}
 	}
 }
 
-  public static void main(String[] args) throws Exception {
-    Configuration conf = new Configuration();
+  /**
+   * Emits the text of each surviving n-gram once per map task, with its count.
+   */
+  public static class SurfaceMapper
+       extends Mapper<Object, ReviewWritable, Text, IntWritable>{
+
+    private final NgramGenerator ngrams = new NgramGenerator();
+    private final long[] fingerprints = new long[NgramGenerator.MAX_N + 1];
+    private final StringBuilder surface = new StringBuilder();
+    private final Text word = new Text();
+    private final IntWritable count = new IntWritable();
+    private LongIntHashMap counts;
+
+    @Override
+    protected void setup(Context context) throws IOException {
+    	counts = loadCounts(context.getConfiguration());
+    }
+
+    public void map(Object key, ReviewWritable value, Context context
+                    ) throws IOException, InterruptedException {
+      if(value.getText().getLength() > 0 && counts.size() > 0) {
+			int tokens = ngrams.tokenize(value.getText().toString());
+			for (int first = 0; first < tokens - 1; first++) {
+				int max = ngrams.fingerprints(first, fingerprints);
+				for (int n = NgramGenerator.MIN_N; n <= max; n++) {
+					int c = counts.get(fingerprints[n], 0);
+					if (c > 0) {
+						surface.setLength(0);
+						word.set(ngrams.surface(first, n, surface).toString());
+						count.set(c);
+						context.write(word, count);
+						// negative marks the n-gram as already emitted by this task
+						counts.put(fingerprints[n], -c);
+					}
+				}
+			}
+		}
+	}
+}
+
+  public static class SurfaceReducer
+       extends Reducer<Text,IntWritable,Text,NullWritable> {
+    public void reduce(Text key, Iterable<IntWritable> values,
+                       Context context
+                       ) throws IOException, InterruptedException {
+    	int count = values.iterator().next().get();
+		int length = new StringTokenizer(key.toString()).countTokens();
+		context.write(new Text(key + "\t" + length + "\t" + count), null);
+	}
+}
+
+  /**
+   * The surviving n-grams of the sampled reviews, for the split points of the
+   * surface reducers.
+   */
+  static class SurfaceSampler extends KeySampler<ReviewWritable, Text> {
+
+    private final NgramGenerator ngrams = new NgramGenerator();
+    private final long[] fingerprints = new long[NgramGenerator.MAX_N + 1];
+    private final StringBuilder surface = new StringBuilder();
+    private final LongIntHashMap counts;
+
+    SurfaceSampler(LongIntHashMap counts) {
+    	this.counts = counts;
+    }
+
+    @Override
+    protected void keys(ReviewWritable value, List<Text> keys) {
+      if(value.getText().getLength() > 0) {
+			int tokens = ngrams.tokenize(value.getText().toString());
+			for (int first = 0; first < tokens - 1; first++) {
+				int max = ngrams.fingerprints(first, fingerprints);
+				for (int n = NgramGenerator.MIN_N; n <= max; n++) {
+					if (counts.get(fingerprints[n], 0) > 0) {
+						surface.setLength(0);
+						keys.add(new Text(ngrams.surface(first, n, surface).toString()));
+					}
+				}
+			}
+		}
+	}
+}
+
+  /**
+   * Read the fingerprint counts written by the first job.
+   */
+  static LongIntHashMap loadCounts(Configuration conf) throws IOException {
+	  Path dir = new Path(conf.get(COUNTS_PATH_KEY));
+	  FileSystem fs = dir.getFileSystem(conf);
+	  LongIntHashMap counts = new LongIntHashMap();
+	  NgramKey key = new NgramKey();
+	  IntWritable value = new IntWritable();
+	  for (FileStatus status : fs.listStatus(dir)) {
+		  if (!status.getPath().getName().startsWith("part-"))
+			  continue;
+		  SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+		  try {
+			  while (reader.next(key, value)) {
+				  counts.put(key.getFingerprint(), value.get());
+			  }
+		  } finally {
+			  reader.close();
+		  }
+	  }
+	  return counts;
+  }
+
+  static CountMinSketch newSketch(Configuration conf) {
+	  return CountMinSketch.forError(conf.getFloat(SKETCH_EPSILON_KEY, (float) DEFAULT_SKETCH_EPSILON),
+			  conf.getFloat(SKETCH_DELTA_KEY, (float) DEFAULT_SKETCH_DELTA));
+  }
+
+  /**
+   * Read the merged sketch written by the pre-pass.
+   */
+  static CountMinSketch loadSketch(Configuration conf) throws IOException {
+	  Path dir = new Path(conf.get(SKETCH_PATH_KEY));
+	  FileSystem fs = dir.getFileSystem(conf);
+	  CountMinSketch sketch = new CountMinSketch();
+	  for (FileStatus status : fs.listStatus(dir)) {
+		  if (!status.getPath().getName().startsWith("part-"))
+			  continue;
+		  SequenceFile.Reader reader = new SequenceFile.Reader(fs, status.getPath(), conf);
+		  try {
+			  if (reader.next(NullWritable.get(), sketch))
+				  return sketch;
+		  } finally {
+			  reader.close();
+		  }
+	  }
+	  throw new IOException("no sketch in " + dir);
+  }
+
+  /**
+   * Build the merged sketch of the n-grams of the input with a single reducer.
+   */
+  static boolean sketch(Configuration conf, Path input, Path output) throws Exception {
+    Job job = Job.getInstance(conf, "word sequency sketch");
+    job.setJarByClass(WordSequencyCount.class);
+    job.setMapperClass(SketchMapper.class);
+    job.setReducerClass(SketchReducer.class);
+    job.setNumReduceTasks(1);
+    job.setInputFormatClass(ReviewJsonInputFormat.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(CountMinSketch.class);
+
+    FileInputFormat.addInputPath(job, input);
+    FileOutputFormat.setOutputPath(job, output);
+    return job.waitForCompletion(true);
+  }
+
+  /**
+   * Run both jobs, after the sketch pre-pass when ngram.sketch is set; the
+   * intermediate files go to siblings of the output that are removed at the end.
+   */
+  public static boolean run(Configuration conf, Path input, Path output) throws Exception {
+    Path counts = new Path(output.toString() + "-ngram-counts");
+    Path sketch = new Path(output.toString() + "-ngram-sketch");
+
+    boolean sketched = conf.getBoolean(SKETCH_KEY, false);
+    if (sketched) {
+    	if (!sketch(conf, input, sketch)) {
+    		return false;
+    	}
+    	conf.set(SKETCH_PATH_KEY, sketch.toString());
+    }
+
     Job job = Job.getInstance(conf, "word sequency count");
     job.setJarByClass(WordSequencyCount.class);
     job.setMapperClass(TokenizerMapper.class);
+    job.setCombinerClass(IntSumCombiner.class);
     job.setReducerClass(IntSumReducer.class);
+    job.setInputFormatClass(ReviewJsonInputFormat.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
 
-    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputKeyClass(NgramKey.class);
 	job.setMapOutputValueClass(IntWritable.class);
-    
-    job.setOutputKeyClass(Text.class);
-    job.setOutputValueClass(NullWritable.class);
-
-    FileInputFormat.addInputPath(job, new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada"));
-    FileOutputFormat.setOutputPath(job, new Path("/home/italo/Área de Trabalho/www/UFC/files/saida"));
-    
-    System.exit(job.waitForCompletion(true) ? 0 : 1);
+
+    job.setOutputKeyClass(NgramKey.class);
+    job.setOutputValueClass(IntWritable.class);
+
+    FileInputFormat.addInputPath(job, input);
+    FileOutputFormat.setOutputPath(job, counts);
+
+    boolean counted = job.waitForCompletion(true);
+    if (sketched) {
+    	sketch.getFileSystem(conf).delete(sketch, true);
+    }
+    if (!counted) {
+    	return false;
+    }
+
+    conf.set(COUNTS_PATH_KEY, counts.toString());
+    Job surfaces = Job.getInstance(conf, "word sequency surfaces");
+    surfaces.setJarByClass(WordSequencyCount.class);
+    surfaces.setMapperClass(SurfaceMapper.class);
+    surfaces.setReducerClass(SurfaceReducer.class);
+    surfaces.setInputFormatClass(ReviewJsonInputFormat.class);
+
+    surfaces.setMapOutputKeyClass(Text.class);
+    surfaces.setMapOutputValueClass(IntWritable.class);
+
+    surfaces.setOutputKeyClass(Text.class);
+    surfaces.setOutputValueClass(NullWritable.class);
+
+    FileInputFormat.addInputPath(surfaces, input);
+    FileOutputFormat.setOutputPath(surfaces, output);
+
+    Path partitions = new Path(output.toString() + "-partitions");
+    boolean sorted = KeySampler.isEnabled(conf)
+    		&& new SurfaceSampler(loadCounts(conf)).setPartitions(surfaces, partitions);
+    boolean done = surfaces.waitForCompletion(true);
+    counts.getFileSystem(conf).delete(counts, true);
+    if (sorted) {
+    	partitions.getFileSystem(conf).delete(partitions, false);
+    }
+    return done;
   }
-}
\ No newline at end of file
+
+  public static void main(String[] args) throws Exception {
+    Configuration conf = new Configuration();
+    Path input = new Path("/home/italo/Área de Trabalho/www/UFC/files/entrada");
+    Path output = new Path("/home/italo/Área de Trabalho/www/UFC/files/saida");
+
+    System.exit(run(conf, input, output) ? 0 : 1);
+  }
+}
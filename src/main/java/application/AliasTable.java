@@ -0,0 +1,109 @@
+package application;
+
+/**
+ * Walker alias table over a set of topics, drawn in O(1).<br>
+ * Built with Vose's method into arrays allocated once for the largest number
+ * of topics it will hold; the work arrays are shared by the caller. The
+ * weights it was built from are kept, in ascending topic order, so that a
+ * Metropolis-Hastings step can use the exact probability of a stale table.
+ */
+class AliasTable {
+
+	final int[] topics;
+	final double[] weights;
+	final float[] prob;
+	final int[] alias;
+	int size;
+
+	/**
+	 * sum of the weights the table was built from<br>
+	 */
+	double mass;
+
+	/**
+	 * draws left before the table is rebuilt<br>
+	 */
+	int draws;
+
+	AliasTable(int capacity) {
+		topics = new int[capacity];
+		weights = new double[capacity];
+		prob = new float[capacity];
+		alias = new int[capacity];
+	}
+
+	/**
+	 * Build over the first n topics, in ascending order, and their weights.
+	 *
+	 * @param scaled, small, large work arrays of at least n entries
+	 */
+	void build(int[] topicIds, double[] weights, int n, double[] scaled, int[] small, int[] large) {
+		size = n;
+		mass = 0;
+		for (int i = 0; i < n; i++) {
+			mass += weights[i];
+		}
+		int s = 0;
+		int l = 0;
+		for (int i = 0; i < n; i++) {
+			topics[i] = topicIds[i];
+			this.weights[i] = weights[i];
+			scaled[i] = weights[i] * n / mass;
+			if (scaled[i] < 1)
+				small[s++] = i;
+			else
+				large[l++] = i;
+		}
+		while (s > 0 && l > 0) {
+			int a = small[--s];
+			int b = large[--l];
+			prob[a] = (float) scaled[a];
+			alias[a] = b;
+			scaled[b] = (scaled[b] + scaled[a]) - 1;
+			if (scaled[b] < 1)
+				small[s++] = b;
+			else
+				large[l++] = b;
+		}
+		while (l > 0) {
+			int b = large[--l];
+			prob[b] = 1;
+			alias[b] = b;
+		}
+		while (s > 0) {
+			int a = small[--s];
+			prob[a] = 1;
+			alias[a] = a;
+		}
+	}
+
+	/**
+	 * @return the weight of the topic when the table was built, 0 when absent
+	 */
+	double weight(int topic) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int t = topics[mid];
+			if (t < topic)
+				low = mid + 1;
+			else if (t > topic)
+				high = mid - 1;
+			else
+				return weights[mid];
+		}
+		return 0;
+	}
+
+	/**
+	 * @param u uniform in [0, 1)
+	 */
+	int sample(double u) {
+		double x = u * size;
+		int i = (int) x;
+		if (i >= size)
+			i = size - 1;
+		return x - i < prob[i] ? topics[i] : topics[alias[i]];
+	}
+}
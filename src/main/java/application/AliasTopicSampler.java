@@ -0,0 +1,180 @@
+package application;
+
+/**
+ * Metropolis-Hastings sampler with alias tables, after LightLDA (Yuan et al., 2015).<br>
+ * Each step alternates two proposals. The word proposal draws from
+ * (nw_k + beta) / (n_k + V * beta) through an alias table of the word, kept
+ * for K draws before it is rebuilt, plus one table for the beta part shared
+ * by all words. The document proposal draws the topic of another term of the
+ * document, or a uniform topic with the weight of alpha. Both are accepted
+ * against the full conditional with the probabilities they were drawn with,
+ * so stale tables slow mixing down but do not bias it. Rebuilding a table
+ * costs O(K) once per K draws, so a term costs O(log K) at most whatever the
+ * number of topics.
+ */
+public class AliasTopicSampler implements TopicSampler {
+
+	/**
+	 * word and document proposal pairs per term<br>
+	 */
+	private static final int MH_STEPS = 2;
+
+	private RandomStream random = new RandomStream();
+
+	private int[] nw;
+	private int[] nwsum;
+	private int K;
+	private double alpha;
+	private double beta;
+	private double vBeta;
+
+	private AliasTable[] tables;
+	private AliasTable smoothing;
+
+	private int[] topicIds;
+	private double[] weights;
+	private double[] scaled;
+	private int[] small;
+	private int[] large;
+
+	private int[] words;
+	private int[] z;
+	private int start;
+	private int end;
+	private int[] nd;
+	private int ndOffset;
+
+	@Override
+	public TopicSampler fork() {
+		return new AliasTopicSampler();
+	}
+
+	@Override
+	public void setRandom(RandomStream random) {
+		this.random = random;
+	}
+
+	@Override
+	public void init(int[] nw, int[] nwsum, int K, double alpha, double beta) {
+		this.nw = nw;
+		this.nwsum = nwsum;
+		this.K = K;
+		this.alpha = alpha;
+		this.beta = beta;
+		int V = nw.length / K;
+		this.vBeta = V * beta;
+
+		tables = new AliasTable[V];
+		for (int w = 0; w < V; w++) {
+			int total = 0;
+			for (int k = 0; k < K; k++) {
+				total += nw[w * K + k];
+			}
+			// a word never has more topics than instances
+			tables[w] = new AliasTable(Math.min(K, total));
+		}
+		smoothing = new AliasTable(K);
+		topicIds = new int[K];
+		weights = new double[K];
+		scaled = new double[K];
+		small = new int[K];
+		large = new int[K];
+	}
+
+	@Override
+	public void beginDocument(int[] words, int[] z, int start, int end, int[] nd, int ndOffset) {
+		this.words = words;
+		this.z = z;
+		this.start = start;
+		this.end = end;
+		this.nd = nd;
+		this.ndOffset = ndOffset;
+	}
+
+	@Override
+	public int sample(int n) {
+		int w = words[n];
+		int wk = w * K;
+		int dk = ndOffset;
+		int s = z[n];
+		nw[wk + s]--;
+		nd[dk + s]--;
+		nwsum[s]--;
+
+		int others = end - start - 1;
+		double kAlpha = K * alpha;
+		for (int step = 0; step < MH_STEPS; step++) {
+			int t = drawWordProposal(w);
+			if (t != s) {
+				AliasTable table = tables[w];
+				double pi = (nd[dk + t] + alpha) * (nw[wk + t] + beta) * (nwsum[s] + vBeta)
+						* (table.weight(s) + smoothing.weight(s))
+						/ ((nd[dk + s] + alpha) * (nw[wk + s] + beta) * (nwsum[t] + vBeta)
+						* (table.weight(t) + smoothing.weight(t)));
+				if (pi >= 1 || random.nextDouble() < pi)
+					s = t;
+			}
+
+			if (random.nextDouble() * (others + kAlpha) < others) {
+				int j = start + random.nextInt(others);
+				t = z[j >= n ? j + 1 : j];
+			} else {
+				t = random.nextInt(K);
+			}
+			if (t != s) {
+				double pi = (nw[wk + t] + beta) * (nwsum[s] + vBeta) / ((nw[wk + s] + beta) * (nwsum[t] + vBeta));
+				if (pi >= 1 || random.nextDouble() < pi)
+					s = t;
+			}
+		}
+
+		nw[wk + s]++;
+		nd[dk + s]++;
+		nwsum[s]++;
+		return s;
+	}
+
+	/**
+	 * The table of the word is left as it is, its stale weights being
+	 * accounted for by the acceptance test until it is rebuilt.
+	 */
+	@Override
+	public void move(int w, int from, int to) {
+		nw[w * K + from]--;
+		nw[w * K + to]++;
+		nwsum[from]--;
+		nwsum[to]++;
+	}
+
+	private int drawWordProposal(int w) {
+		AliasTable table = tables[w];
+		if (table.draws <= 0) {
+			int wk = w * K;
+			int size = 0;
+			for (int k = 0; k < K && size < table.topics.length; k++) {
+				if (nw[wk + k] > 0) {
+					topicIds[size] = k;
+					weights[size++] = nw[wk + k] / (nwsum[k] + vBeta);
+				}
+			}
+			table.build(topicIds, weights, size, scaled, small, large);
+			table.draws = K;
+		}
+		if (smoothing.draws <= 0) {
+			for (int k = 0; k < K; k++) {
+				topicIds[k] = k;
+				weights[k] = beta / (nwsum[k] + vBeta);
+			}
+			smoothing.build(topicIds, weights, K, scaled, small, large);
+			smoothing.draws = K;
+		}
+		table.draws--;
+		smoothing.draws--;
+
+		double u = random.nextDouble() * (table.mass + smoothing.mass);
+		if (u < table.mass) {
+			return table.sample(u / table.mass);
+		}
+		return smoothing.sample((u - table.mass) / smoothing.mass);
+	}
+}
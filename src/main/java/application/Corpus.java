@@ -3,31 +3,139 @@ package application;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
-public class Corpus {
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Documents in compressed sparse row layout: the terms of document m are
+ * tokens[offsets[m]] to tokens[offsets[m + 1] - 1], all documents in one
+ * array.<br>
+ */
+public class Corpus implements Writable {
 	
-	List<int[]> documentList;
+	int[] tokens;
+	int[] offsets;
+	int size;
 	Vocabulary vocabulary;
 
 	public Corpus() {
-		documentList = new LinkedList<int[]>();
-		vocabulary = new Vocabulary();
+		this(new Vocabulary());
+	}
+
+	/**
+	 * Empty corpus whose words start with the ids of the vocabulary.
+	 */
+	public Corpus(Vocabulary vocabulary) {
+		tokens = new int[1024];
+		offsets = new int[64];
+		this.vocabulary = vocabulary;
 	}
 
 	public int[] addDocument(List<String> document) {
 		int[] doc = new int[document.size()];
 		int i = 0;
 		for (String word : document) {
-			doc[i++] = vocabulary.getId(word, true);
+			doc[i++] = vocabulary.add(word);
 		}
-		documentList.add(doc);
+		addDocument(doc);
 		return doc;
 	}
 
+	public void addDocument(int[] doc) {
+		int end = offsets[size];
+		if (end + doc.length > tokens.length) {
+			tokens = Arrays.copyOf(tokens, Math.max(tokens.length * 2, end + doc.length));
+		}
+		if (size + 2 > offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		System.arraycopy(doc, 0, tokens, end, doc.length);
+		offsets[++size] = end + doc.length;
+	}
+
+	/**
+	 * @return a copy of every document as its own array
+	 */
 	public int[][] toArray() {
-		return documentList.toArray(new int[0][]);
+		int[][] documents = new int[size][];
+		for (int m = 0; m < size; m++) {
+			documents[m] = Arrays.copyOfRange(tokens, offsets[m], offsets[m + 1]);
+		}
+		return documents;
+	}
+
+	/**
+	 * @return the terms of all documents, valid up to getOffsets()[size()]; not a copy
+	 */
+	public int[] getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * @return the start of each document in getTokens() and its end at size(); not a copy
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * @return the documents in turn, each one a copy made when it is reached
+	 */
+	public Iterator<int[]> iterator() {
+		return new Iterator<int[]>() {
+			private int m;
+
+			@Override
+			public boolean hasNext() {
+				return m < size;
+			}
+
+			@Override
+			public int[] next() {
+				if (m == size)
+					throw new NoSuchElementException();
+				m++;
+				return Arrays.copyOfRange(tokens, offsets[m - 1], offsets[m]);
+			}
+		};
+	}
+
+	/**
+	 * @return number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		vocabulary.write(out);
+		WritableUtils.writeVInt(out, size);
+		for (int m = 0; m < size; m++) {
+			WritableUtils.writeVInt(out, offsets[m + 1] - offsets[m]);
+		}
+		for (int n = 0; n < offsets[size]; n++) {
+			WritableUtils.writeVInt(out, tokens[n]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		vocabulary.readFields(in);
+		size = WritableUtils.readVInt(in);
+		offsets = new int[Math.max(64, size + 1)];
+		for (int m = 0; m < size; m++) {
+			offsets[m + 1] = offsets[m] + WritableUtils.readVInt(in);
+		}
+		tokens = new int[Math.max(1024, offsets[size])];
+		for (int n = 0; n < offsets[size]; n++) {
+			tokens[n] = WritableUtils.readVInt(in);
+		}
 	}
 
 	public int getVocabularySize() {
@@ -37,8 +145,8 @@ public class Corpus {
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
-		for (int[] doc : documentList) {
-			sb.append(Arrays.toString(doc)).append("\n");
+		for (int m = 0; m < size; m++) {
+			sb.append(Arrays.toString(Arrays.copyOfRange(tokens, offsets[m], offsets[m + 1]))).append("\n");
 		}
 		sb.append(vocabulary);
 		return sb.toString();
@@ -73,6 +181,9 @@ public class Corpus {
 		return vocabulary;
 	}
 
+	/**
+	 * @return a copy of every document, see getTokens() to read them in place
+	 */
 	public int[][] getDocument() {
 		return toArray();
 	}
@@ -86,8 +197,8 @@ public class Corpus {
 			for (String word : words) {
 				if (word.trim().length() < 2)
 					continue;
-				Integer id = vocabulary.getId(word);
-				if (id != null)
+				int id = vocabulary.indexOf(word);
+				if (id >= 0)
 					wordList.add(id);
 			}
 		}
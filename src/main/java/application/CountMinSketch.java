@@ -0,0 +1,151 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Count-Min sketch over 64-bit fingerprints, with conservative update.<br>
+ * An estimate is never below the true count, so a key whose estimate does not
+ * reach a threshold cannot reach it either. With a width of e / epsilon and a
+ * depth of ln(1 / delta) the overestimate is at most epsilon times the total
+ * count with probability 1 - delta. Sketches of the same shape merge by
+ * adding their cells.<br>
+ * Only the non-zero cells are serialised, as vint gaps between their indexes
+ * and vint counts: the sketch of one split touches at most depth cells per
+ * distinct key, so it costs about as much as those keys to ship, whatever its
+ * width.
+ */
+public class CountMinSketch implements Writable {
+
+	private int depth;
+	private int width;
+	private int mask;
+	private int[] cells;
+
+	public CountMinSketch() {
+	}
+
+	/**
+	 * @param width number of cells per row, rounded up to a power of two
+	 */
+	public CountMinSketch(int depth, int width) {
+		init(depth, Integer.highestOneBit(Math.max(2, width) * 2 - 1));
+	}
+
+	/**
+	 * Sketch whose overestimate is at most epsilon * total with probability 1 - delta.
+	 */
+	public static CountMinSketch forError(double epsilon, double delta) {
+		if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1)
+			throw new IllegalArgumentException("epsilon and delta must be in (0, 1)");
+		int depth = (int) Math.ceil(Math.log(1 / delta));
+		long width = (long) Math.ceil(Math.E / epsilon);
+		if (width > 1 << 30)
+			throw new IllegalArgumentException("epsilon too small: " + epsilon);
+		return new CountMinSketch(depth, (int) width);
+	}
+
+	private void init(int depth, int width) {
+		this.depth = depth;
+		this.width = width;
+		this.mask = width - 1;
+		this.cells = new int[depth * width];
+	}
+
+	/**
+	 * Add to the count of the key, raising each of its cells only as far as needed.
+	 */
+	public void add(long key, int count) {
+		int estimate = estimate(key) + count;
+		int h1 = (int) key;
+		int h2 = (int) (key >>> 32) | 1;
+		for (int row = 0; row < depth; row++) {
+			int cell = row * width + ((h1 + row * h2) & mask);
+			if (cells[cell] < estimate)
+				cells[cell] = estimate;
+		}
+	}
+
+	/**
+	 * @return an upper bound of the count of the key
+	 */
+	public int estimate(long key) {
+		int h1 = (int) key;
+		int h2 = (int) (key >>> 32) | 1;
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			int c = cells[row * width + ((h1 + row * h2) & mask)];
+			if (c < min)
+				min = c;
+		}
+		return min;
+	}
+
+	/**
+	 * Add the cells of a sketch of the same shape.
+	 */
+	public void merge(CountMinSketch other) {
+		if (other.depth != depth || other.width != width)
+			throw new IllegalArgumentException("sketch shapes differ: " + depth + "x" + width
+					+ " and " + other.depth + "x" + other.width);
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] += other.cells[i];
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(cells, 0);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(depth);
+		out.writeInt(width);
+		int used = 0;
+		for (int c : cells) {
+			if (c != 0)
+				used++;
+		}
+		WritableUtils.writeVInt(out, used);
+		int last = -1;
+		for (int i = 0; i < cells.length; i++) {
+			if (cells[i] != 0) {
+				WritableUtils.writeVInt(out, i - last);
+				WritableUtils.writeVInt(out, cells[i]);
+				last = i;
+			}
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int d = in.readInt();
+		int w = in.readInt();
+		if (cells == null || d != depth || w != width) {
+			init(d, w);
+		} else {
+			clear();
+		}
+		int used = WritableUtils.readVInt(in);
+		int i = -1;
+		for (int k = 0; k < used; k++) {
+			i += WritableUtils.readVInt(in);
+			cells[i] = WritableUtils.readVInt(in);
+		}
+	}
+
+	// ---- GET AND SETS ----
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+}
@@ -0,0 +1,91 @@
+package application;
+
+/**
+ * Samples from the full conditional over every topic: p(z_i = j | z_-i, w) =
+ * (n_-i,j(w_i) + beta)/(n_-i,j(.) + W * beta) * (n_-i,j(d_i) + alpha), the
+ * document length term being the same for all topics. O(K) per term.
+ */
+public class DenseTopicSampler implements TopicSampler {
+
+	private RandomStream random = new RandomStream();
+
+	private int[] nw;
+	private int[] nwsum;
+	private int K;
+	private double alpha;
+	private double beta;
+	private double vBeta;
+
+	private int[] words;
+	private int[] z;
+	private int[] nd;
+	private int ndOffset;
+
+	/**
+	 * cumulative weights of the topics<br>
+	 */
+	private double[] p;
+
+	@Override
+	public TopicSampler fork() {
+		return new DenseTopicSampler();
+	}
+
+	@Override
+	public void setRandom(RandomStream random) {
+		this.random = random;
+	}
+
+	@Override
+	public void init(int[] nw, int[] nwsum, int K, double alpha, double beta) {
+		this.nw = nw;
+		this.nwsum = nwsum;
+		this.K = K;
+		this.alpha = alpha;
+		this.beta = beta;
+		this.vBeta = nw.length / K * beta;
+		p = new double[K];
+	}
+
+	@Override
+	public void beginDocument(int[] words, int[] z, int start, int end, int[] nd, int ndOffset) {
+		this.words = words;
+		this.z = z;
+		this.nd = nd;
+		this.ndOffset = ndOffset;
+	}
+
+	@Override
+	public int sample(int n) {
+		int wk = words[n] * K;
+		int dk = ndOffset;
+		int topic = z[n];
+		nw[wk + topic]--;
+		nd[dk + topic]--;
+		nwsum[topic]--;
+
+		double sum = 0;
+		for (int k = 0; k < K; k++) {
+			sum += (nw[wk + k] + beta) / (nwsum[k] + vBeta) * (nd[dk + k] + alpha);
+			p[k] = sum;
+		}
+		double u = random.nextDouble() * sum;
+		for (topic = 0; topic < K - 1; topic++) {
+			if (u < p[topic])
+				break;
+		}
+
+		nw[wk + topic]++;
+		nd[dk + topic]++;
+		nwsum[topic]++;
+		return topic;
+	}
+
+	@Override
+	public void move(int w, int from, int to) {
+		nw[w * K + from]--;
+		nw[w * K + to]++;
+		nwsum[from]--;
+		nwsum[to]++;
+	}
+}
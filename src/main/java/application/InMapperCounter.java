@@ -0,0 +1,199 @@
+package application;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * In-mapper combining for the counting jobs.<br>
+ * Keys are given as serialised bytes and counted in an open-addressing table
+ * whose key bytes live in one arena, so counting an occurrence allocates
+ * nothing. When the table grows past the configured byte budget, or when the
+ * mapper calls {@link #flush()} from cleanup(), every (key, count) pair is
+ * handed to the {@link Emitter} and the table is emptied. Jobs also register
+ * {@link IntSumCombiner} to merge what the flushes of one task still repeat.<br>
+ * The reduction ratio of a job is OCCURRENCES / EMITTED.
+ */
+public class InMapperCounter {
+
+	public static enum Counters { FLUSHES, OCCURRENCES, EMITTED }
+
+	/**
+	 * job configuration key of the memory budget in bytes<br>
+	 */
+	public static final String BUDGET_KEY = "inmapper.budget.bytes";
+
+	public static final int DEFAULT_BUDGET = 32 * 1024 * 1024;
+
+	/**
+	 * Writes one aggregated key, typically through context.write().
+	 */
+	public interface Emitter {
+		void emit(byte[] bytes, int offset, int length, int count) throws IOException, InterruptedException;
+	}
+
+	/**
+	 * bytes of bookkeeping per entry: offset, length, hash, count and two table slots<br>
+	 */
+	private static final int ENTRY_OVERHEAD = 24;
+
+	private final Emitter emitter;
+	private final long budget;
+
+	private byte[] arena = new byte[64 * 1024];
+	private int arenaLength;
+
+	private int[] offset = new int[1024];
+	private int[] length = new int[1024];
+	private int[] hash = new int[1024];
+	private int[] count = new int[1024];
+	private int entries;
+
+	/**
+	 * table[slot] entry index + 1, 0 when free<br>
+	 */
+	private int[] table = new int[2048];
+
+	private Counter flushes;
+	private Counter occurrences;
+	private Counter emitted;
+
+	public InMapperCounter(Emitter emitter, long budget) {
+		this.emitter = emitter;
+		this.budget = budget;
+	}
+
+	/**
+	 * Counter sized by the job configuration, reporting to the task counters.
+	 */
+	public InMapperCounter(Emitter emitter, TaskInputOutputContext<?, ?, ?, ?> context) {
+		this(emitter, context.getConfiguration().getLong(BUDGET_KEY, DEFAULT_BUDGET));
+		flushes = context.getCounter(Counters.FLUSHES);
+		occurrences = context.getCounter(Counters.OCCURRENCES);
+		emitted = context.getCounter(Counters.EMITTED);
+	}
+
+	public static void setBudget(Configuration conf, long bytes) {
+		conf.setLong(BUDGET_KEY, bytes);
+	}
+
+	/**
+	 * Count one occurrence of the key.
+	 */
+	public void add(byte[] bytes, int off, int len) throws IOException, InterruptedException {
+		add(bytes, off, len, 1);
+	}
+
+	public void add(byte[] bytes, int off, int len, int delta) throws IOException, InterruptedException {
+		if (occurrences != null)
+			occurrences.increment(delta);
+		int h = hash(bytes, off, len);
+		int mask = table.length - 1;
+		int slot = h & mask;
+		while (table[slot] != 0) {
+			int e = table[slot] - 1;
+			if (hash[e] == h && equals(e, bytes, off, len)) {
+				count[e] += delta;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (memory() + len + ENTRY_OVERHEAD > budget && entries > 0) {
+			flush();
+			slot = h & (table.length - 1);
+		}
+		insert(slot, h, bytes, off, len, delta);
+	}
+
+	/**
+	 * Emit every counted key and empty the table.
+	 */
+	public void flush() throws IOException, InterruptedException {
+		if (entries == 0)
+			return;
+		for (int e = 0; e < entries; e++) {
+			emitter.emit(arena, offset[e], length[e], count[e]);
+		}
+		if (flushes != null) {
+			flushes.increment(1);
+			emitted.increment(entries);
+		}
+		entries = 0;
+		arenaLength = 0;
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * @return number of distinct keys waiting to be flushed
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * @return bytes used by the keys and their bookkeeping
+	 */
+	public long memory() {
+		return arenaLength + (long) entries * ENTRY_OVERHEAD;
+	}
+
+	private void insert(int slot, int h, byte[] bytes, int off, int len, int delta) {
+		if (arenaLength + len > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + len));
+		}
+		if (entries == offset.length) {
+			int capacity = entries * 2;
+			offset = Arrays.copyOf(offset, capacity);
+			length = Arrays.copyOf(length, capacity);
+			hash = Arrays.copyOf(hash, capacity);
+			count = Arrays.copyOf(count, capacity);
+		}
+		System.arraycopy(bytes, off, arena, arenaLength, len);
+		offset[entries] = arenaLength;
+		length[entries] = len;
+		hash[entries] = h;
+		count[entries] = delta;
+		arenaLength += len;
+		table[slot] = ++entries;
+		if (entries * 2 > table.length) {
+			rehash();
+		}
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int e = 0; e < entries; e++) {
+			int slot = hash[e] & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = e + 1;
+		}
+	}
+
+	private boolean equals(int e, byte[] bytes, int off, int len) {
+		if (length[e] != len)
+			return false;
+		int start = offset[e];
+		for (int i = 0; i < len; i++) {
+			if (arena[start + i] != bytes[off + i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(byte[] bytes, int off, int len) {
+		int h = 0x811c9dc5;
+		for (int i = off; i < off + len; i++) {
+			h = (h ^ bytes[i]) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+}
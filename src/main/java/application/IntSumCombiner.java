@@ -0,0 +1,25 @@
+package application;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * Combiner of the counting jobs: sums the partial counts of a key without
+ * applying any output format or threshold of the real reducer.
+ */
+public class IntSumCombiner<K> extends Reducer<K, IntWritable, K, IntWritable> {
+
+	private final IntWritable result = new IntWritable();
+
+	@Override
+	protected void reduce(K key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+		int sum = 0;
+		for (IntWritable val : values) {
+			sum += val.get();
+		}
+		result.set(sum);
+		context.write(key, result);
+	}
+}
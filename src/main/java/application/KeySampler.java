@@ -0,0 +1,172 @@
+package application;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Split points of a {@link TotalOrderPartitioner} sampled from the map output
+ * keys of a job.<br>
+ * The InputSampler of Hadoop samples the input keys, which here are line
+ * offsets; instead, a subclass turns each sampled record into the keys its
+ * mapper would emit. Records are read from up to total.order.splits splits
+ * spread over the input, each kept with probability total.order.frequency.
+ * The jobs count in the mapper and combine, so a reducer gets about one
+ * record per distinct key and map task, however often the key occurs: the
+ * keys of a split are counted once each, and at most total.order.samples of
+ * these (split, key) pairs are held, a uniform sample of all of them. A word
+ * found in every split then weighs as much as any other such word, not as
+ * much as its occurrences. The keys are sorted with the sort comparator of
+ * the job, the raw comparator registered for the key class, so the split
+ * points are in shuffle order, and reducer i gets the keys between the points
+ * i - 1 and i: the part files, one after the other, are sorted. The local job runner runs
+ * a single reducer whatever the job asks for, so there the job is left as it
+ * is; its one part file is sorted already.
+ */
+public abstract class KeySampler<V, K extends WritableComparable<?>> {
+
+	/**
+	 * number of reducers, total ordering is off below 2 (default)<br>
+	 */
+	public static final String REDUCERS_KEY = "total.order.reducers";
+	public static final String SAMPLES_KEY = "total.order.samples";
+	public static final String FREQUENCY_KEY = "total.order.frequency";
+	public static final String SPLITS_KEY = "total.order.splits";
+
+	public static final int DEFAULT_SAMPLES = 10000;
+	public static final float DEFAULT_FREQUENCY = 0.1f;
+	public static final int DEFAULT_SPLITS = 10;
+
+	/**
+	 * Add the map output keys of the record, new instances the sampler keeps.
+	 */
+	protected abstract void keys(V value, List<K> keys) throws IOException;
+
+	/**
+	 * @return whether total.order.reducers asks for total ordering
+	 */
+	public static boolean isEnabled(Configuration conf) {
+		return conf.getInt(REDUCERS_KEY, 0) > 1;
+	}
+
+	/**
+	 * Sample the input of the job, write the split points to the file and
+	 * partition the job with them. A point equal to the one before it moves to
+	 * the next greater key of the sample; the job gets fewer reducers than
+	 * asked for only when the sample holds fewer distinct keys.
+	 *
+	 * @return false, the job left unchanged, when total ordering is off, the
+	 *         job runs locally or no key was sampled
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean setPartitions(Job job, Path file) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		int reducers = conf.getInt(REDUCERS_KEY, 0);
+		if (reducers < 2 || "local".equals(conf.get("mapred.job.tracker", "local")))
+			return false;
+		List<K> samples = sample(job);
+		if (samples.isEmpty())
+			return false;
+
+		RawComparator<K> comparator = (RawComparator<K>) job.getSortComparator();
+		Collections.sort(samples, comparator);
+		List<K> points = new ArrayList<K>(reducers - 1);
+		float step = samples.size() / (float) reducers;
+		int index = 0;
+		for (int i = 1; i < reducers; i++) {
+			index = Math.max(index, Math.round(step * i));
+			while (index < samples.size() && !points.isEmpty()
+					&& comparator.compare(points.get(points.size() - 1), samples.get(index)) >= 0) {
+				index++;
+			}
+			if (index >= samples.size())
+				break;
+			points.add(samples.get(index));
+		}
+
+		FileSystem fs = file.getFileSystem(conf);
+		file = fs.makeQualified(file);
+		SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, file, job.getMapOutputKeyClass(), NullWritable.class);
+		try {
+			for (K point : points) {
+				writer.append(point, NullWritable.get());
+			}
+		} finally {
+			writer.close();
+		}
+		TotalOrderPartitioner.setPartitionFile(conf, file);
+		job.setPartitionerClass(TotalOrderPartitioner.class);
+		job.setNumReduceTasks(points.size() + 1);
+		return true;
+	}
+
+	/**
+	 * Reservoir sample of the distinct keys of the records kept from each
+	 * split; the keys must implement equals() and hashCode().
+	 */
+	@SuppressWarnings("unchecked")
+	private List<K> sample(Job job) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		int limit = Math.max(1, conf.getInt(SAMPLES_KEY, DEFAULT_SAMPLES));
+		float frequency = conf.getFloat(FREQUENCY_KEY, DEFAULT_FREQUENCY);
+		InputFormat<?, V> format;
+		try {
+			format = (InputFormat<?, V>) ReflectionUtils.newInstance(job.getInputFormatClass(), conf);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("input format of " + job.getJobName() + " not found", e);
+		}
+		List<InputSplit> splits = format.getSplits(job);
+		int used = Math.min(splits.size(), conf.getInt(SPLITS_KEY, DEFAULT_SPLITS));
+		RandomStream random = new RandomStream();
+		List<K> samples = new ArrayList<K>(limit);
+		List<K> keys = new ArrayList<K>();
+		Set<K> distinct = new HashSet<K>();
+		long seen = 0;
+		for (int i = 0; i < used; i++) {
+			InputSplit split = splits.get((int) ((long) i * splits.size() / used));
+			TaskAttemptContext context = new TaskAttemptContext(conf, new TaskAttemptID());
+			RecordReader<?, V> reader = format.createRecordReader(split, context);
+			distinct.clear();
+			try {
+				reader.initialize(split, context);
+				while (reader.nextKeyValue()) {
+					if (random.nextDouble() >= frequency)
+						continue;
+					keys.clear();
+					keys(reader.getCurrentValue(), keys);
+					distinct.addAll(keys);
+				}
+			} finally {
+				reader.close();
+			}
+			for (K key : distinct) {
+				seen++;
+				if (samples.size() < limit) {
+					samples.add(key);
+				} else if (random.nextDouble() * seen < limit) {
+					samples.set(random.nextInt(limit), key);
+				}
+			}
+		}
+		return samples;
+	}
+}
@@ -2,13 +2,31 @@ package application;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class LdaGibbsSampler {
 
     /**
-     * document data (term lists)<br>
+     * document data, the terms of document m are words[offsets[m]] to
+     * words[offsets[m + 1] - 1]<br>
      */
-    int[][] documents;
+    int[] words;
+
+    /**
+     * start of each document in words, and the end of the last at M<br>
+     */
+    int[] offsets;
+
+    /**
+     * number of documents<br>
+     */
+    int M;
 
     /**
      * vocabulary size<br>
@@ -31,19 +49,19 @@ public class LdaGibbsSampler {
     double beta = 0.5;
 
     /**
-     * topic assignments for each word.<br>
+     * topic assignments for each word, parallel to words.<br>
      */
-    int z[][];
+    int[] z;
 
     /**
-     * cwt[i][j] number of instances of word i (term?) assigned to topic j.<br>
+     * nw[i * K + j] number of instances of word i (term?) assigned to topic j.<br>
      */
-    int[][] nw;
+    int[] nw;
 
     /**
-     * na[i][j] number of words in document i assigned to topic j.<br>
+     * nd[i * K + j] number of words in document i assigned to topic j.<br>
      */
-    int[][] nd;
+    int[] nd;
 
     /**
      * nwsum[j] total number of words assigned to topic j.<br>
@@ -56,41 +74,105 @@ public class LdaGibbsSampler {
     int[] ndsum;
 
     /**
-     * cumulative statistics of theta<br>
+     * cumulative statistics of theta, M x K<br>
      */
-    double[][] thetasum;
+    double[] thetasum;
 
     /**
-     * cumulative statistics of phi<br>
+     * cumulative statistics of phi, K x V<br>
      */
-    double[][] phisum;
+    double[] phisum;
 
     /**
      * size of statistics<br>
      */
     int numstats;
 
+    /**
+     * first document added since the state the sampler resumed from<br>
+     */
+    int firstNew;
+
+    /**
+     * default number of iterations of training and inference<br>
+     */
+    public static final int DEFAULT_ITERATIONS = 1000;
+
     /**
      * sampling lag (?)<br>
      */
-    private static int THIN_INTERVAL = 20;
+    private int thinInterval = 20;
 
     /**
      * burn-in period<br>
      */
-    private static int BURN_IN = 100;
+    private int burnIn = 100;
 
     /**
      * max iterations<br>
      */
-    private static int ITERATIONS = 1000;
+    private int iterations = DEFAULT_ITERATIONS;
 
     /**
      * sample lag (if -1 only one sample taken)<br>
      */
-    private static int SAMPLE_LAG = 10;
+    private int sampleLag = 10;
+
+    private int dispcol = 0;
+
+    /**
+     * worker threads sampling the documents, 1 to sample on the calling thread<br>
+     */
+    private int threads = 1;
 
-    private static int dispcol = 0;
+    /**
+     * documents each worker samples between two reconciliations of the counts, 0 for once per iteration<br>
+     */
+    private int syncInterval = 0;
+
+    /**
+     * topic counts of the current document in shard mode<br>
+     */
+    private int[] shardNd;
+
+    /**
+     * draws the topic of each term<br>
+     */
+    private TopicSampler sampler = new DenseTopicSampler();
+
+    /**
+     * source of the initial state and of the streams of the samplers, unseeded
+     * unless {@link #setSeed} is called<br>
+     */
+    private RandomStream random;
+
+    /**
+     * iterations between two evaluations of the fit, 0 not to evaluate<br>
+     */
+    private int evaluationInterval = 0;
+
+    /**
+     * relative log-likelihood improvement under which an evaluation counts
+     * towards convergence<br>
+     */
+    private double tolerance = 1e-4;
+
+    /**
+     * evaluations in a row under the tolerance to stop sampling<br>
+     */
+    private int window = 3;
+
+    /**
+     * documents left out of training to measure perplexity<br>
+     */
+    private int[][] heldOut;
+
+    private final List<SamplerListener> listeners = new ArrayList<SamplerListener>();
+
+    /**
+     * sweeps over the even terms of a held-out document to estimate its topics<br>
+     */
+    private static final int HELD_OUT_SWEEPS = 20;
 
     /**
      * Initialise the Gibbs sampler with data.<br>
@@ -99,8 +181,48 @@ public class LdaGibbsSampler {
      * @param V         vocabulary size
      */
     public LdaGibbsSampler(int[][] documents, int V) {
-        this.documents = documents;
+        this.M = documents.length;
         this.V = V;
+        offsets = new int[M + 1];
+        for (int m = 0; m < M; m++) {
+            offsets[m + 1] = offsets[m] + documents[m].length;
+        }
+        words = new int[offsets[M]];
+        for (int m = 0; m < M; m++) {
+            System.arraycopy(documents[m], 0, words, offsets[m], documents[m].length);
+        }
+    }
+
+    /**
+     * Initialise the Gibbs sampler with data in compressed sparse row layout,
+     * which is not copied.<br>
+     *
+     * @param words   terms of all documents
+     * @param offsets start of each document in words, and the end of the last at M
+     * @param M       number of documents
+     * @param V       vocabulary size
+     */
+    public LdaGibbsSampler(int[] words, int[] offsets, int M, int V) {
+        this.words = words;
+        this.offsets = offsets;
+        this.M = M;
+        this.V = V;
+    }
+
+    /**
+     * Initialise the Gibbs sampler with the documents of a corpus, which are not copied.<br>
+     */
+    public LdaGibbsSampler(Corpus corpus) {
+        this(corpus.getTokens(), corpus.getOffsets(), corpus.size(), corpus.getVocabularySize());
+    }
+
+    /**
+     * Initialise a sampler without documents, for {@link #shard}.<br>
+     *
+     * @param V vocabulary size
+     */
+    public LdaGibbsSampler(int V) {
+        this(new int[0], new int[1], 0, V);
     }
 
     /**
@@ -111,26 +233,103 @@ public class LdaGibbsSampler {
      * @param K number of topics
      */
     public void initialState(int K) {
-        int M = documents.length;
+        this.K = K;
+        RandomStream random = random();
+        z = new int[offsets[M]];
+        for (int n = 0; n < z.length; n++) {
+            z[n] = random.nextInt(K);
+        }
+        count();
+    }
 
-        nw = new int[V][K];
-        nd = new int[M][K];
+    /**
+     * Rebuild the counts from the topic assignments.<br>
+     */
+    private void count() {
+        nw = new int[V * K];
+        nd = new int[M * K];
         nwsum = new int[K];
         ndsum = new int[M];
-
-      
-        z = new int[M][];
         for (int m = 0; m < M; m++) {
-            int N = documents[m].length;
-            z[m] = new int[N];
-            for (int n = 0; n < N; n++) {
-                int topic = (int) (Math.random() * K);
-                z[m][n] = topic;
-                nw[documents[m][n]][topic]++;
-                nd[m][topic]++;
+            for (int n = offsets[m]; n < offsets[m + 1]; n++) {
+                int topic = z[n];
+                nw[words[n] * K + topic]++;
+                nd[m * K + topic]++;
                 nwsum[topic]++;
             }
-            ndsum[m] = N;
+            ndsum[m] = offsets[m + 1] - offsets[m];
+        }
+    }
+
+    /**
+     * @return the topic assignments and hyperparameters, to be saved with the
+     * corpus; the assignments are not copied
+     */
+    public SamplerState getState() {
+        return new SamplerState(K, alpha, beta, M, z);
+    }
+
+    /**
+     * Start from a saved state instead of a random one, for {@link #update}.
+     * The corpus must start with the documents of the state, and may go on
+     * with new documents and new words; the terms of the new documents get
+     * random topics.<br>
+     *
+     * @param state state saved after training on the first documents of the corpus
+     */
+    public void resume(SamplerState state) {
+        int saved = state.getDocuments();
+        if (saved > M || offsets[saved] != state.getZ().length)
+            throw new IllegalArgumentException("the corpus does not start with the " + saved
+                    + " documents of the sampler state");
+        K = state.getK();
+        alpha = state.getAlpha();
+        beta = state.getBeta();
+        RandomStream random = random();
+        z = new int[offsets[M]];
+        System.arraycopy(state.getZ(), 0, z, 0, state.getZ().length);
+        for (int n = state.getZ().length; n < z.length; n++) {
+            z[n] = random.nextInt(K);
+        }
+        count();
+        firstNew = saved;
+        numstats = 0;
+    }
+
+    /**
+     * Go on training after {@link #resume}, at a cost that follows the new
+     * documents: each iteration samples every new document, and as many old
+     * ones as rejuvenation times the new ones, taking the old documents in
+     * turn across iterations. theta and phi are then those of the final state.<br>
+     *
+     * @param iterations   sweeps over the new documents
+     * @param rejuvenation old documents sampled per new document in an iteration
+     */
+    public void update(int iterations, double rejuvenation) {
+        sampler.setRandom(random().split());
+        sampler.init(nw, nwsum, K, alpha, beta);
+        int old = (int) Math.min(firstNew, Math.ceil(rejuvenation * (M - firstNew)));
+        int next = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (int m = firstNew; m < M; m++) {
+                sample(m);
+            }
+            for (int j = 0; j < old; j++) {
+                sample(next);
+                next = next + 1 < firstNew ? next + 1 : 0;
+            }
+        }
+        numstats = 0;
+    }
+
+    /**
+     * One Gibbs sweep over document m, on the calling thread.<br>
+     */
+    private void sample(int m) {
+        int end = offsets[m + 1];
+        sampler.beginDocument(words, z, offsets[m], end, nd, m * K);
+        for (int n = offsets[m]; n < end; n++) {
+            z[n] = sampler.sample(n);
         }
     }
 
@@ -152,97 +351,378 @@ public class LdaGibbsSampler {
         this.alpha = alpha;
         this.beta = beta;
 
-        if (SAMPLE_LAG > 0) {
-            thetasum = new double[documents.length][K];
-            phisum = new double[K][V];
+        if (sampleLag > 0) {
+            thetasum = new double[M * K];
+            phisum = new double[K * V];
             numstats = 0;
         }
 
         initialState(K);
+        sampler.setRandom(random.split());
+        sampler.init(nw, nwsum, K, alpha, beta);
 
-        System.out.println("Sampling " + ITERATIONS + " iterations with burn-in of " + BURN_IN + " (B/S=" + THIN_INTERVAL + ").");
+        System.out.println("Sampling " + iterations + " iterations with burn-in of " + burnIn + " (B/S=" + thinInterval + ").");
 
-        for (int i = 0; i < ITERATIONS; i++) {
-            for (int m = 0; m < z.length; m++) {
-                for (int n = 0; n < z[m].length; n++) {
-                    int topic = sampleFullConditional(m, n);
-                    z[m][n] = topic;
-                }
+        Worker[] workers = null;
+        ForkJoinPool pool = null;
+        if (threads > 1) {
+            workers = new Worker[threads];
+            for (int t = 0; t < threads; t++) {
+                TopicSampler forked = t == 0 ? sampler : sampler.fork();
+                forked.setRandom(random.split());
+                workers[t] = new Worker(forked,
+                        (int) ((long) M * t / threads),
+                        (int) ((long) M * (t + 1) / threads));
             }
+            pool = new ForkJoinPool(threads);
+        }
 
-            if ((i < BURN_IN) && (i % THIN_INTERVAL == 0)) {
-                dispcol++;
+        double lastLikelihood = Double.NaN;
+        int flat = 0;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                if (workers == null) {
+                    for (int m = 0; m < M; m++) {
+                        sample(m);
+                    }
+                } else {
+                    sweep(pool, workers);
+                }
+
+                if ((i < burnIn) && (i % thinInterval == 0)) {
+                    dispcol++;
+                }
+                if ((i > burnIn) && (i % thinInterval == 0)) {
+                    dispcol++;
+                }
+                if ((i > burnIn) && (sampleLag > 0) && (i % sampleLag == 0)) {
+                    updateParams();
+                    if (i % thinInterval != 0) dispcol++;
+                }
+                if (dispcol >= 100) {
+                    //System.out.println();
+                    dispcol = 0;
+                }
+                if (evaluationInterval > 0 && (i + 1) % evaluationInterval == 0) {
+                    double likelihood = logLikelihood();
+                    double perplexity = heldOut == null ? Double.NaN : perplexity(heldOut);
+                    for (SamplerListener listener : listeners) {
+                        listener.evaluated(i + 1, likelihood, perplexity);
+                    }
+                    if ((likelihood - lastLikelihood) / Math.abs(lastLikelihood) < tolerance) {
+                        flat++;
+                    } else {
+                        flat = 0;
+                    }
+                    lastLikelihood = likelihood;
+                    // the statistics of theta and phi need one sample at least
+                    if (flat >= window && i > burnIn && (sampleLag <= 0 || numstats > 0)) {
+                        for (SamplerListener listener : listeners) {
+                            listener.converged(i + 1);
+                        }
+                        break;
+                    }
+                }
             }
-            if ((i > BURN_IN) && (i % THIN_INTERVAL == 0)) {
-                dispcol++;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
-            if ((i > BURN_IN) && (SAMPLE_LAG > 0) && (i % SAMPLE_LAG == 0)) {
-                updateParams();
-                if (i % THIN_INTERVAL != 0) dispcol++;
+        }
+        System.out.println();
+    }
+
+    /**
+     * One iteration of the workers, AD-LDA style: each worker samples its
+     * documents against its own copy of the counts, then the changes of all
+     * workers are applied to nw and nwsum, every syncInterval documents. Each
+     * worker then applies the changes of the others to its copy, through its
+     * sampler, so a reconciliation costs what changed rather than V x K.<br>
+     */
+    private void sweep(ForkJoinPool pool, Worker[] workers) {
+        for (Worker worker : workers) {
+            worker.next = worker.start;
+        }
+        final int interval = syncInterval > 0 ? syncInterval : Integer.MAX_VALUE;
+        boolean more = true;
+        while (more) {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(workers.length);
+            for (final Worker worker : workers) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        worker.reconcile(workers);
+                        worker.sample(interval);
+                        return null;
+                    }
+                });
             }
-            if (dispcol >= 100) {
-                //System.out.println();
-                dispcol = 0;
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while sampling", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("sampling failed", e.getCause());
+                }
+            }
+            more = false;
+            for (Worker worker : workers) {
+                worker.merge();
+                more |= worker.next < worker.end;
             }
         }
-        System.out.println();
     }
 
     /**
-     * Sample a topic z_i from the full conditional distribution: p(z_i = j |
-     * z_-i, w) = (n_-i,j(w_i) + beta)/(n_-i,j(.) + W * beta) * (n_-i,j(d_i) +
-     * alpha)/(n_-i,.(d_i) + K * alpha) <br>
-     *
-     * @param m document
-     * @param n word
+     * Samples a contiguous range of documents on its own copy of the
+     * topic--term counts and logs the topic changes it makes. The documents
+     * of a worker are its own, so nd needs no copy.<br>
      */
-    private int sampleFullConditional(int m, int n) {
+    private class Worker {
 
-        int topic = z[m][n];
-        nw[documents[m][n]][topic]--;
-        nd[m][topic]--;
-        nwsum[topic]--;
-        ndsum[m]--;
+        final TopicSampler sampler;
+        final int start;
+        final int end;
+        int next;
 
-        double[] p = new double[K];
-        for (int k = 0; k < K; k++) {
-            p[k] = (nw[documents[m][n]][k] + beta) / (nwsum[k] + V * beta)
-                    * (nd[m][k] + alpha) / (ndsum[m] + K * alpha);
+        final int[] nwLocal;
+        final int[] nwsumLocal;
+
+        /**
+         * (word, old topic, new topic) of every change since the last merge<br>
+         */
+        int[] log = new int[3 * 1024];
+        int logLength;
+
+        /**
+         * the log of the last merge, in nw but not yet in the copies of the
+         * other workers<br>
+         */
+        int[] merged = new int[3 * 1024];
+        int mergedLength;
+
+        Worker(TopicSampler sampler, int start, int end) {
+            this.sampler = sampler;
+            this.start = start;
+            this.end = end;
+            nwLocal = Arrays.copyOf(nw, nw.length);
+            nwsumLocal = Arrays.copyOf(nwsum, K);
+            sampler.init(nwLocal, nwsumLocal, K, alpha, beta);
         }
-        for (int k = 1; k < p.length; k++) {
-            p[k] += p[k - 1];
+
+        /**
+         * Bring the copy of the counts up to nw, applying the changes the
+         * other workers merged; it already holds its own.
+         */
+        void reconcile(Worker[] workers) {
+            for (Worker other : workers) {
+                if (other == this)
+                    continue;
+                int[] changes = other.merged;
+                for (int i = 0; i < other.mergedLength; i += 3) {
+                    sampler.move(changes[i], changes[i + 1], changes[i + 2]);
+                }
+            }
         }
-        double u = Math.random() * p[K - 1];
-        for (topic = 0; topic < p.length; topic++) {
-            if (u < p[topic])
-                break;
+
+        void sample(int count) {
+            int last = (int) Math.min(end, (long) next + count);
+            for (int m = next; m < last; m++) {
+                int end = offsets[m + 1];
+                sampler.beginDocument(words, z, offsets[m], end, nd, m * K);
+                for (int n = offsets[m]; n < end; n++) {
+                    int old = z[n];
+                    int topic = sampler.sample(n);
+                    if (topic != old) {
+                        if (logLength + 3 > log.length) {
+                            log = Arrays.copyOf(log, log.length * 2);
+                        }
+                        log[logLength++] = words[n];
+                        log[logLength++] = old;
+                        log[logLength++] = topic;
+                    }
+                    z[n] = topic;
+                }
+            }
+            next = last;
         }
 
-        nw[documents[m][n]][topic]++;
-        nd[m][topic]++;
-        nwsum[topic]++;
-        ndsum[m]++;
+        void merge() {
+            for (int i = 0; i < logLength; i += 3) {
+                int wk = log[i] * K;
+                nw[wk + log[i + 1]]--;
+                nw[wk + log[i + 2]]++;
+                nwsum[log[i + 1]]--;
+                nwsum[log[i + 2]]++;
+            }
+            int[] swap = merged;
+            merged = log;
+            mergedLength = logLength;
+            log = swap;
+            logLength = 0;
+        }
+    }
+
+    /**
+     * Prepare to sample the documents of one shard of Approximate Distributed
+     * LDA, see {@link #sampleDocument}. The counts are those of the whole
+     * corpus after the previous iteration; they are updated in place, so later
+     * documents of the shard see the changes of the earlier ones.<br>
+     *
+     * @param K     number of topics
+     * @param alpha symmetric prior parameter on document--topic associations
+     * @param beta  symmetric prior parameter on topic--term associations
+     * @param nw    nw[w * K + k] instances of word w assigned to topic k
+     */
+    public void shard(int K, double alpha, double beta, int[] nw) {
+        this.K = K;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.nw = nw;
+        nwsum = new int[K];
+        for (int i = 0; i < nw.length; i++) {
+            nwsum[i % K] += nw[i];
+        }
+        shardNd = new int[K];
+        sampler.setRandom(random().split());
+        sampler.init(nw, nwsum, K, alpha, beta);
+    }
 
-        return topic;
+    /**
+     * One Gibbs sweep over a document of the shard.<br>
+     *
+     * @param doc    term ids
+     * @param z      topic of each term, updated
+     * @param length number of terms
+     */
+    public void sampleDocument(int[] doc, int[] z, int length) {
+        int[] nd = shardNd;
+        Arrays.fill(nd, 0);
+        for (int n = 0; n < length; n++) {
+            nd[z[n]]++;
+        }
+        sampler.beginDocument(doc, z, 0, length, nd, 0);
+        for (int n = 0; n < length; n++) {
+            z[n] = sampler.sample(n);
+        }
     }
 
     /**
      * Add to the statistics the values of theta and phi for the current state.<br>
      */
     private void updateParams() {
-        for (int m = 0; m < documents.length; m++) {
-            for (int k = 0; k < K; k++) {
-                thetasum[m][k] += (nd[m][k] + alpha) / (ndsum[m] + K * alpha);
+        for (int m = 0; m < M; m++) {
+            double denom = ndsum[m] + K * alpha;
+            for (int k = 0, i = m * K; k < K; k++, i++) {
+                thetasum[i] += (nd[i] + alpha) / denom;
             }
         }
-        for (int k = 0; k < K; k++) {
-            for (int w = 0; w < V; w++) {
-                phisum[k][w] += (nw[w][k] + beta) / (nwsum[k] + V * beta);
+        for (int w = 0; w < V; w++) {
+            for (int k = 0, i = w * K; k < K; k++, i++) {
+                phisum[k * V + w] += (nw[i] + beta) / (nwsum[k] + V * beta);
             }
         }
         numstats++;
     }
 
+    /**
+     * Log-likelihood of the words given their topics, log p(w | z) (Griffiths
+     * and Steyvers, 2004), under the current counts. Words with no instance of
+     * a topic add nothing, so the cost follows the non-zero counts.<br>
+     */
+    public double logLikelihood() {
+        double vBeta = V * beta;
+        double logGammaBeta = logGamma(beta);
+        double ll = K * logGamma(vBeta);
+        for (int k = 0; k < K; k++) {
+            ll -= logGamma(nwsum[k] + vBeta);
+        }
+        for (int i = 0; i < nw.length; i++) {
+            if (nw[i] > 0) {
+                ll += logGamma(nw[i] + beta) - logGammaBeta;
+            }
+        }
+        return ll;
+    }
+
+    /**
+     * Perplexity of documents by document completion: the topics of each
+     * document are sampled over its even terms with the current phi, then the
+     * odd terms are scored.<br>
+     *
+     * @param documents documents left out of training
+     */
+    public double perplexity(int[][] documents) {
+        double[] denom = new double[K];
+        for (int k = 0; k < K; k++) {
+            denom[k] = nwsum[k] + V * beta;
+        }
+        RandomStream random = random();
+        int[] ndLocal = new int[K];
+        double[] p = new double[K];
+        double logSum = 0;
+        long count = 0;
+        for (int[] doc : documents) {
+            int observed = (doc.length + 1) / 2;
+            int[] zLocal = new int[observed];
+            Arrays.fill(ndLocal, 0);
+            for (int n = 0; n < observed; n++) {
+                zLocal[n] = random.nextInt(K);
+                ndLocal[zLocal[n]]++;
+            }
+            for (int sweep = 0; sweep < HELD_OUT_SWEEPS; sweep++) {
+                for (int n = 0; n < observed; n++) {
+                    int wk = doc[2 * n] * K;
+                    ndLocal[zLocal[n]]--;
+                    double sum = 0;
+                    for (int k = 0; k < K; k++) {
+                        sum += (nw[wk + k] + beta) / denom[k] * (ndLocal[k] + alpha);
+                        p[k] = sum;
+                    }
+                    double u = random.nextDouble() * sum;
+                    int topic = 0;
+                    while (topic < K - 1 && u >= p[topic]) {
+                        topic++;
+                    }
+                    zLocal[n] = topic;
+                    ndLocal[topic]++;
+                }
+            }
+            for (int n = 1; n < doc.length; n += 2) {
+                int wk = doc[n] * K;
+                double pw = 0;
+                for (int k = 0; k < K; k++) {
+                    pw += (nw[wk + k] + beta) / denom[k] * (ndLocal[k] + alpha) / (observed + K * alpha);
+                }
+                logSum += Math.log(pw);
+                count++;
+            }
+        }
+        return Math.exp(-logSum / count);
+    }
+
+    private static final double[] LANCZOS = {0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+            771.32342877765313, -176.61502916214059, 12.507343278686905, -0.13857109526572012,
+            9.9843695780195716e-6, 1.5056327351493116e-7};
+
+    /**
+     * log Gamma(x) for x > 0, Lanczos approximation (g = 7)
+     */
+    static double logGamma(double x) {
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.sin(Math.PI * x)) - logGamma(1 - x);
+        }
+        x -= 1;
+        double a = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            a += LANCZOS[i] / (x + i);
+        }
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(a);
+    }
+
     /**
      * Retrieve estimated document--topic associations. If sample lag > 0 then
      * the mean value of all sampled statistics for theta[][] is taken.<br>
@@ -250,19 +730,19 @@ public class LdaGibbsSampler {
      * @return theta multinomial mixture of document topics (M x K)
      */
     public double[][] getTheta() {
-        double[][] theta = new double[documents.length][K];
+        double[][] theta = new double[M][K];
 
-        if (SAMPLE_LAG > 0) {
-            for (int m = 0; m < documents.length; m++) {
+        if (sampleLag > 0 && numstats > 0) {
+            for (int m = 0; m < M; m++) {
                 for (int k = 0; k < K; k++) {
-                    theta[m][k] = thetasum[m][k] / numstats;
+                    theta[m][k] = thetasum[m * K + k] / numstats;
                 }
             }
 
         } else {
-            for (int m = 0; m < documents.length; m++) {
+            for (int m = 0; m < M; m++) {
                 for (int k = 0; k < K; k++) {
-                    theta[m][k] = (nd[m][k] + alpha) / (ndsum[m] + K * alpha);
+                    theta[m][k] = (nd[m * K + k] + alpha) / (ndsum[m] + K * alpha);
                 }
             }
         }
@@ -278,16 +758,17 @@ public class LdaGibbsSampler {
      */
     public double[][] getPhi() {
         double[][] phi = new double[K][V];
-        if (SAMPLE_LAG > 0) {
+        if (sampleLag > 0 && numstats > 0) {
             for (int k = 0; k < K; k++) {
+                System.arraycopy(phisum, k * V, phi[k], 0, V);
                 for (int w = 0; w < V; w++) {
-                    phi[k][w] = phisum[k][w] / numstats;
+                    phi[k][w] /= numstats;
                 }
             }
         } else {
-            for (int k = 0; k < K; k++) {
-                for (int w = 0; w < V; w++) {
-                    phi[k][w] = (nw[w][k] + beta) / (nwsum[k] + V * beta);
+            for (int w = 0; w < V; w++) {
+                for (int k = 0; k < K; k++) {
+                    phi[k][w] = (nw[w * K + k] + beta) / (nwsum[k] + V * beta);
                 }
             }
         }
@@ -332,6 +813,80 @@ public class LdaGibbsSampler {
         }
     }
 
+    /**
+     * Use another strategy to draw the topics; set it before sampling.<br>
+     *
+     * @param sampler dense, SparseLDA or alias sampler, see {@link TopicSampler#create}
+     */
+    public void setSampler(TopicSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public TopicSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Evaluate the fit every interval iterations and stop before the maximum
+     * number of iterations once the log-likelihood has improved by less than
+     * the tolerance, relatively, window evaluations in a row, burn-in and one
+     * sample of the statistics done.<br>
+     *
+     * @param interval  iterations between two evaluations, 0 not to evaluate
+     * @param tolerance relative improvement of the log-likelihood
+     * @param window    evaluations in a row under the tolerance
+     */
+    public void convergence(int interval, double tolerance, int window) {
+        this.evaluationInterval = interval;
+        this.tolerance = tolerance;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Documents to report the perplexity of at each evaluation; they do not
+     * decide convergence.<br>
+     */
+    public void setHeldOut(int[][] documents) {
+        this.heldOut = documents;
+    }
+
+    public void addListener(SamplerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SamplerListener listener) {
+        listeners.remove(listener);
+    }
+
+    private RandomStream random() {
+        if (random == null) {
+            random = new RandomStream();
+        }
+        return random;
+    }
+
+    /**
+     * Seed the random numbers so that a run can be replayed: the same seed,
+     * data and settings give the same topics, whatever the number of threads
+     * as long as it is the same. Set it before sampling.<br>
+     */
+    public void setSeed(long seed) {
+        random = new RandomStream(seed);
+    }
+
+    /**
+     * Sample with several threads, each on its own range of documents and its
+     * own copy of the topic--term counts (V x K per thread).<br>
+     *
+     * @param threads      number of worker threads, 1 to sample on the calling thread
+     * @param syncInterval documents each worker samples between two
+     *                     reconciliations of the counts, 0 for once per iteration
+     */
+    public void parallel(int threads, int syncInterval) {
+        this.threads = Math.max(1, threads);
+        this.syncInterval = syncInterval;
+    }
+
     /**
      * Configure the gibbs sampler<br>
      *
@@ -341,10 +896,34 @@ public class LdaGibbsSampler {
      * @param sampleLag    sample interval (-1 for just one sample at the end)
      */
     public void configure(int iterations, int burnIn, int thinInterval, int sampleLag) {
-        ITERATIONS = iterations;
-        BURN_IN = burnIn;
-        THIN_INTERVAL = thinInterval;
-        SAMPLE_LAG = sampleLag;
+        this.iterations = iterations;
+        this.burnIn = burnIn;
+        this.thinInterval = thinInterval;
+        this.sampleLag = sampleLag;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getBurnIn() {
+        return burnIn;
+    }
+
+    public int getThinInterval() {
+        return thinInterval;
+    }
+
+    public int getSampleLag() {
+        return sampleLag;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getBeta() {
+        return beta;
     }
 
     /**
@@ -355,54 +934,62 @@ public class LdaGibbsSampler {
      * @return a p array
      */
     public static double[] inference(double alpha, double beta, double[][] phi, int[] doc) {
+        return inference(alpha, beta, phi, doc, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Inference a new document by a pre-trained phi matrix
+     *
+     * @param phi        pre-trained phi matrix
+     * @param doc        document
+     * @param iterations number of sweeps over the document
+     * @return a p array
+     */
+    public static double[] inference(double alpha, double beta, double[][] phi, int[] doc, int iterations) {
+        return inference(alpha, beta, phi, doc, iterations, new RandomStream());
+    }
+
+    /**
+     * Inference a new document by a pre-trained phi matrix
+     *
+     * @param phi        pre-trained phi matrix
+     * @param doc        document
+     * @param iterations number of sweeps over the document
+     * @param random     random numbers, used by the calling thread only
+     * @return a p array
+     */
+    public static double[] inference(double alpha, double beta, double[][] phi, int[] doc, int iterations,
+                                     RandomStream random) {
         int K = phi.length;
-        int V = phi[0].length;
 
-        int[][] nw = new int[V][K];
+        // phi is fixed, so only the document counts change
         int[] nd = new int[K];
-        int[] nwsum = new int[K];
-        int ndsum = 0;
-
-       
+        double[] p = new double[K];
         int N = doc.length;
         int[] z = new int[N];
         for (int n = 0; n < N; n++) {
-            int topic = (int) (Math.random() * K);
+            int topic = random.nextInt(K);
             z[n] = topic;
-            nw[doc[n]][topic]++;
             nd[topic]++;
-            nwsum[topic]++;
         }
-        ndsum = N;
-        for (int i = 0; i < ITERATIONS; i++) {
-            for (int n = 0; n < z.length; n++) {
-
-                int topic = z[n];
-                nw[doc[n]][topic]--;
-                nd[topic]--;
-                nwsum[topic]--;
-                ndsum--;
+        int ndsum = N;
+        for (int i = 0; i < iterations; i++) {
+            for (int n = 0; n < N; n++) {
+                nd[z[n]]--;
 
-                double[] p = new double[K];
+                // the document length term is the same for all topics
+                double sum = 0;
                 for (int k = 0; k < K; k++) {
-                    p[k] = phi[k][doc[n]]
-                            * (nd[k] + alpha) / (ndsum + K * alpha);
-                }
-                for (int k = 1; k < p.length; k++) {
-                    p[k] += p[k - 1];
+                    sum += phi[k][doc[n]] * (nd[k] + alpha);
+                    p[k] = sum;
                 }
-                double u = Math.random() * p[K - 1];
-                for (topic = 0; topic < p.length; topic++) {
+                double u = random.nextDouble() * sum;
+                int topic;
+                for (topic = 0; topic < K - 1; topic++) {
                     if (u < p[topic])
                         break;
                 }
-                if (topic == K) {
-                    throw new RuntimeException("the param K or topic is set too small");
-                }
-                nw[doc[n]][topic]++;
                 nd[topic]++;
-                nwsum[topic]++;
-                ndsum++;
                 z[n] = topic;
             }
         }
@@ -419,9 +1006,7 @@ public class LdaGibbsSampler {
         return inference(2.0, 0.5, phi, doc);
     }
 
-    static String[] shades = {"     ", ".    ", ":    ", ":.   ", "::   ", "::.  ", ":::  ", ":::. ", ":::: ", "::::.", ":::::"};
-
-    static NumberFormat lnf = new DecimalFormat("00E0");
+    static final String[] shades = {"     ", ".    ", ":    ", ":.   ", "::   ", "::.  ", ":::  ", ":::. ", ":::: ", "::::.", ":::::"};
 
     /**
      * create a string representation whose gray value appears as an indicator
@@ -434,7 +1019,8 @@ public class LdaGibbsSampler {
     public static String shadeDouble(double d, double max) {
         int a = (int) Math.floor(d * 10 / max + 0.5);
         if (a > 10 || a < 0) {
-            String x = lnf.format(d);
+            // DecimalFormat is not thread-safe, so none is shared between samplers
+            String x = new DecimalFormat("00E0").format(d);
             a = 5 - x.length();
             for (int i = 0; i < a; i++) {
                 x += " ";
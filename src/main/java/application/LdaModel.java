@@ -0,0 +1,319 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Trained LDA model, read-only, over a memory-mapped file.<br>
+ * Every reader of the same file on a node shares one copy in the page cache,
+ * and opening it reads nothing but the header. The file, big-endian, is:
+ * <pre>
+ *  0 int    magic "LDAM"
+ *  4 int    version
+ *  8 int    K, number of topics
+ * 12 int    V, vocabulary size
+ * 16 double alpha
+ * 24 double beta
+ * 32 long   offset of the words: int[V + 1] offsets of each word in the
+ *           UTF-8 bytes that follow them
+ * 40 long   offset of the word ids in the unsigned order of their bytes, int[V]
+ * 48 long   offset of phi topic-major, float[K * V]
+ * 56 long   offset of phi word-major, float[V * K]
+ * </pre>
+ * The buffers of an open model are never written and may be read by any
+ * number of threads. They are released by the garbage collector.
+ */
+public class LdaModel {
+
+	public static final int MAGIC = 0x4C44414D;
+	public static final int VERSION = 1;
+
+	/**
+	 * name of the model in the output of the training jobs<br>
+	 */
+	public static final String FILE_NAME = "model.lda";
+
+	private static final int HEADER = 64;
+
+	private final int K;
+	private final int V;
+	private final double alpha;
+	private final double beta;
+
+	/**
+	 * header, words and sorted ids<br>
+	 */
+	private final ByteBuffer meta;
+	private final int wordsOffset;
+	private final int sortedOffset;
+
+	private final FloatBuffer topicMajor;
+	private final FloatBuffer wordMajor;
+
+	private LdaModel(ByteBuffer meta, FloatBuffer topicMajor, FloatBuffer wordMajor) {
+		this.meta = meta;
+		this.topicMajor = topicMajor;
+		this.wordMajor = wordMajor;
+		K = meta.getInt(8);
+		V = meta.getInt(12);
+		alpha = meta.getDouble(16);
+		beta = meta.getDouble(24);
+		wordsOffset = (int) meta.getLong(32);
+		sortedOffset = (int) meta.getLong(40);
+	}
+
+	/**
+	 * Map a model file of the local file system.
+	 *
+	 * @throws IOException when the file is not a model of a supported version
+	 */
+	public static LdaModel open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0)
+				;
+			if (header.position() < HEADER || header.getInt(0) != MAGIC)
+				throw new IOException(file + " is not an LDA model");
+			if (header.getInt(4) != VERSION)
+				throw new IOException(file + ": unsupported LDA model version " + header.getInt(4));
+			long topicOffset = header.getLong(48);
+			long wordOffset = header.getLong(56);
+			long phiBytes = 4L * header.getInt(8) * header.getInt(12);
+			if (topicOffset > Integer.MAX_VALUE || phiBytes > Integer.MAX_VALUE)
+				throw new IOException(file + ": a section of the model is larger than 2 GB");
+			if (wordOffset + phiBytes > channel.size())
+				throw new IOException(file + " is truncated");
+			ByteBuffer meta = channel.map(FileChannel.MapMode.READ_ONLY, 0, topicOffset);
+			FloatBuffer topicMajor = channel.map(FileChannel.MapMode.READ_ONLY, topicOffset, phiBytes).asFloatBuffer();
+			FloatBuffer wordMajor = channel.map(FileChannel.MapMode.READ_ONLY, wordOffset, phiBytes).asFloatBuffer();
+			return new LdaModel(meta, topicMajor, wordMajor);
+		} finally {
+			// the mappings stay valid once the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write a model to a file of a Hadoop file system.
+	 *
+	 * @param phi phi[k][w] probability of word w in topic k (K x V)
+	 */
+	public static void write(Configuration conf, Path path, double[][] phi, Vocabulary vocabulary, double alpha,
+			double beta) throws IOException {
+		FSDataOutputStream out = path.getFileSystem(conf).create(path);
+		try {
+			write(out, phi, vocabulary, alpha, beta);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write a model; the stream is not closed.
+	 *
+	 * @param phi phi[k][w] probability of word w in topic k (K x V)
+	 */
+	public static void write(OutputStream stream, double[][] phi, Vocabulary vocabulary, double alpha, double beta)
+			throws IOException {
+		int K = phi.length;
+		int V = vocabulary.size();
+		final byte[][] words = new byte[V][];
+		long wordBytes = 0;
+		for (int w = 0; w < V; w++) {
+			words[w] = vocabulary.getWord(w).getBytes(StandardCharsets.UTF_8);
+			wordBytes += words[w].length;
+		}
+		Integer[] sorted = new Integer[V];
+		for (int w = 0; w < V; w++) {
+			sorted[w] = w;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return compareBytes(words[a], words[b]);
+			}
+		});
+
+		long wordsOffset = HEADER;
+		long end = wordsOffset + 4L * (V + 1) + wordBytes;
+		int padding = (int) (-end & 3);
+		long sortedOffset = end + padding;
+		long topicOffset = sortedOffset + 4L * V;
+		long wordOffset = topicOffset + 4L * K * V;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(K);
+		out.writeInt(V);
+		out.writeDouble(alpha);
+		out.writeDouble(beta);
+		out.writeLong(wordsOffset);
+		out.writeLong(sortedOffset);
+		out.writeLong(topicOffset);
+		out.writeLong(wordOffset);
+
+		int offset = 0;
+		out.writeInt(offset);
+		for (byte[] word : words) {
+			offset += word.length;
+			out.writeInt(offset);
+		}
+		for (byte[] word : words) {
+			out.write(word);
+		}
+		for (int i = 0; i < padding; i++) {
+			out.writeByte(0);
+		}
+		for (Integer w : sorted) {
+			out.writeInt(w);
+		}
+		for (int k = 0; k < K; k++) {
+			for (int w = 0; w < V; w++) {
+				out.writeFloat((float) phi[k][w]);
+			}
+		}
+		for (int w = 0; w < V; w++) {
+			for (int k = 0; k < K; k++) {
+				out.writeFloat((float) phi[k][w]);
+			}
+		}
+		out.flush();
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if (c != 0)
+				return c;
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * @return the probability of word w in topic k
+	 */
+	public float phi(int k, int w) {
+		return topicMajor.get(k * V + w);
+	}
+
+	/**
+	 * Copy the probabilities of every word in topic k, from the topic-major copy.
+	 *
+	 * @param dest at least V entries
+	 */
+	public void topic(int k, float[] dest) {
+		FloatBuffer buffer = topicMajor.duplicate();
+		buffer.position(k * V);
+		buffer.get(dest, 0, V);
+	}
+
+	/**
+	 * Copy the probabilities of word w in every topic, from the word-major copy.
+	 *
+	 * @param dest at least K entries
+	 */
+	public void word(int w, float[] dest) {
+		FloatBuffer buffer = wordMajor.duplicate();
+		buffer.position(w * K);
+		buffer.get(dest, 0, K);
+	}
+
+	public String getWord(int id) {
+		int start = meta.getInt(wordsOffset + 4 * id);
+		int end = meta.getInt(wordsOffset + 4 * id + 4);
+		byte[] bytes = new byte[end - start];
+		ByteBuffer buffer = meta.duplicate();
+		buffer.position(wordsOffset + 4 * (V + 1) + start);
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Binary search of the words in the order of their bytes. An ASCII word,
+	 * the usual case, is compared char by char against the mapped bytes, in
+	 * the same order, so a lookup allocates nothing.
+	 *
+	 * @return the id of a word, -1 when it is not in the vocabulary
+	 */
+	public int indexOf(String word) {
+		byte[] bytes = null;
+		for (int i = 0; i < word.length(); i++) {
+			if (word.charAt(i) >= 0x80) {
+				bytes = word.getBytes(StandardCharsets.UTF_8);
+				break;
+			}
+		}
+		int n = bytes != null ? bytes.length : word.length();
+		int base = wordsOffset + 4 * (V + 1);
+		int low = 0;
+		int high = V - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int id = meta.getInt(sortedOffset + 4 * mid);
+			int start = base + meta.getInt(wordsOffset + 4 * id);
+			int length = base + meta.getInt(wordsOffset + 4 * id + 4) - start;
+			int c = 0;
+			for (int i = 0; i < Math.min(length, n) && c == 0; i++) {
+				c = (meta.get(start + i) & 0xff) - (bytes != null ? bytes[i] & 0xff : word.charAt(i));
+			}
+			if (c == 0)
+				c = length - n;
+			if (c < 0)
+				low = mid + 1;
+			else if (c > 0)
+				high = mid - 1;
+			else
+				return id;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return phi copied to the heap (K x V), for code taking a matrix
+	 */
+	public double[][] toPhi() {
+		double[][] phi = new double[K][V];
+		for (int k = 0; k < K; k++) {
+			for (int w = 0; w < V; w++) {
+				phi[k][w] = topicMajor.get(k * V + w);
+			}
+		}
+		return phi;
+	}
+
+	// ---- GET AND SETS ----
+
+	public int getK() {
+		return K;
+	}
+
+	public int getV() {
+		return V;
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	public double getBeta() {
+		return beta;
+	}
+}
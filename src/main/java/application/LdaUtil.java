@@ -1,30 +1,136 @@
 package application;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+/**
+ * Top words of the topics.<br>
+ * The words of a topic are ranked with a heap of the limit best term ids so
+ * far, O(V log limit) per topic without boxing; words of equal probability are
+ * all kept, by increasing term id. Once phi is large enough the topics are
+ * ranked in parallel on the common fork-join pool.
+ */
 public class LdaUtil {
-	
+
+	/**
+	 * K * V above which the topics are ranked in parallel<br>
+	 */
+	private static final long PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * @return term ids of the limit most probable words of the topic, most
+	 *         probable first
+	 */
+	public static int[] topWords(double[] row, int limit) {
+		limit = Math.max(0, Math.min(limit, row.length));
+		// heap[0] is the last of the words kept so far
+		int[] heap = new int[limit];
+		int size = 0;
+		for (int w = 0; w < row.length; w++) {
+			if (size < limit) {
+				heap[size] = w;
+				siftUp(heap, size++, row);
+			} else if (limit > 0 && before(row, w, heap[0])) {
+				heap[0] = w;
+				siftDown(heap, size, row);
+			}
+		}
+		for (int end = size - 1; end > 0; end--) {
+			int last = heap[0];
+			heap[0] = heap[end];
+			heap[end] = last;
+			siftDown(heap, end, row);
+		}
+		return heap;
+	}
+
+	/**
+	 * @return topWords of every topic
+	 */
+	public static int[][] topWords(final double[][] phi, final int limit) {
+		final int[][] top = new int[phi.length][];
+		if (phi.length < 2 || (long) phi.length * phi[0].length < PARALLEL_THRESHOLD) {
+			for (int k = 0; k < phi.length; k++) {
+				top[k] = topWords(phi[k], limit);
+			}
+			return top;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(phi.length);
+		for (int k = 0; k < phi.length; k++) {
+			final int topic = k;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					top[topic] = topWords(phi[topic], limit);
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while ranking the words", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("ranking the words failed", e.getCause());
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * whether word a ranks before word b<br>
+	 */
+	private static boolean before(double[] row, int a, int b) {
+		return row[a] > row[b] || (row[a] == row[b] && a < b);
+	}
+
+	private static void siftUp(int[] heap, int i, double[] row) {
+		int w = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(row, heap[parent], w))
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = w;
+	}
+
+	private static void siftDown(int[] heap, int size, double[] row) {
+		int w = heap[0];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && before(row, heap[child], heap[child + 1])) {
+				child++;
+			}
+			if (!before(row, w, heap[child]))
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = w;
+	}
+
 	@SuppressWarnings("unchecked")
 	public static Map<String, Double>[] translate(double[][] phi, Vocabulary vocabulary, int limit) {
-		limit = Math.min(limit, phi[0].length);
+		int[][] top = topWords(phi, limit);
 		Map<String, Double>[] result = new Map[phi.length];
 		for (int k = 0; k < phi.length; k++) {
-			Map<Double, String> rankMap = new TreeMap<Double, String>(Collections.reverseOrder());
-			for (int i = 0; i < phi[k].length; i++) {
-				rankMap.put(phi[k][i], vocabulary.getWord(i));
-			}
-			Iterator<Map.Entry<Double, String>> iterator = rankMap.entrySet().iterator();
-			result[k] = new LinkedHashMap<String, Double>();
-			for (int i = 0; i < limit; ++i) {
-				Map.Entry<Double, String> entry = iterator.next();
-				result[k].put(entry.getValue(), entry.getKey());
-			}
+			result[k] = translate(phi[k], top[k], vocabulary);
 		}
 		return result;
 	}
 
 	public static Map<String, Double> translate(double[] tp, double[][] phi, Vocabulary vocabulary, int limit) {
-		Map<String, Double>[] topicMapArray = translate(phi, vocabulary, limit);
 		double p = -1.0;
 		int t = -1;
 		for (int k = 0; k < tp.length; k++) {
@@ -33,10 +139,42 @@ public class LdaUtil {
 				t = k;
 			}
 		}
-		return topicMapArray[t];
+		return translate(phi[t], topWords(phi[t], limit), vocabulary);
+	}
+
+	private static Map<String, Double> translate(double[] row, int[] top, Vocabulary vocabulary) {
+		Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for (int w : top) {
+			result.put(vocabulary.getWord(w), row[w]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the line of a topic in the output of the topic jobs: "Topic k"
+	 *         then "word (probability)" for each of its top words, tab separated
+	 */
+	public static String format(int k, double[] row, int[] top, Vocabulary vocabulary) {
+		StringBuilder sb = new StringBuilder(16 + 24 * top.length);
+		sb.append("Topic ").append(k);
+		for (int w : top) {
+			sb.append('\t').append(vocabulary.getWord(w)).append(" (").append(String.format("%.4f", row[w])).append(')');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write the line of every topic, see {@link #format}, each followed by a
+	 * newline.
+	 */
+	public static void export(double[][] phi, Vocabulary vocabulary, int limit, Appendable out) throws IOException {
+		int[][] top = topWords(phi, limit);
+		for (int k = 0; k < phi.length; k++) {
+			out.append(format(k, phi[k], top[k], vocabulary)).append('\n');
+		}
 	}
 
-	
+
 	public static void explain(Map<String, Double>[] result) {
 		int i = 0;
 		for (Map<String, Double> topicMap : result) {
@@ -51,6 +189,5 @@ public class LdaUtil {
 			System.out.println(entry);
 		}
 	}
-	
-}
 
+}
@@ -0,0 +1,123 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from long keys to int values without boxing.<br>
+ * Linear probing over power-of-two tables that double at 50% load.
+ */
+public class LongIntHashMap {
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+	private int mask;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	public LongIntHashMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @return the value of the key, or missing when absent
+	 */
+	public int get(long key, int missing) {
+		int slot = slot(key);
+		return used[slot] ? values[slot] : missing;
+	}
+
+	public boolean containsKey(long key) {
+		return used[slot(key)];
+	}
+
+	public void put(long key, int value) {
+		int slot = slot(key);
+		if (!used[slot]) {
+			used[slot] = true;
+			keys[slot] = key;
+			if (++size * 2 > keys.length) {
+				values[slot] = value;
+				grow();
+				return;
+			}
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Add to the value of the key, starting from 0 when absent.
+	 *
+	 * @return the new value
+	 */
+	public int add(long key, int delta) {
+		int slot = slot(key);
+		if (used[slot]) {
+			return values[slot] += delta;
+		}
+		put(key, delta);
+		return delta;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/**
+	 * @return the key stored in a slot, see {@link #capacity()}
+	 */
+	public long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	public int valueAt(int slot) {
+		return values[slot];
+	}
+
+	public boolean isUsed(int slot) {
+		return used[slot];
+	}
+
+	public int capacity() {
+		return keys.length;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h ^ (h >>> 32)) & mask;
+		while (used[slot] && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		used = new boolean[oldKeys.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int slot = slot(oldKeys[i]);
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package application;
+
+/**
+ * Builds the 2- to 5-grams of a review from a single tokenisation.<br>
+ * The cleaned tokens are kept in one reused char arena and hashed once; the
+ * fingerprint of every n-gram starting at a token is then rolled forward one
+ * word at a time, so no n-gram string is built unless {@link #surface} is
+ * called. An instance is reused for every review of a mapper.
+ */
+public class NgramGenerator implements TextCleaner.TokenHandler {
+
+	public static final int MIN_N = 2;
+	public static final int MAX_N = 5;
+
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private final TextCleaner cleaner = new TextCleaner();
+
+	private char[] arena = new char[1024];
+	private int arenaLength;
+
+	/**
+	 * start[i] offset of token i in the arena, start[i + 1] its end<br>
+	 */
+	private int[] start = new int[129];
+
+	/**
+	 * hash[i] 64-bit hash of token i<br>
+	 */
+	private long[] hash = new long[128];
+
+	private int tokens;
+
+	/**
+	 * Tokenise the text the same way as {@link VariablesJson#getCleanedContent()}.
+	 *
+	 * @return number of tokens
+	 */
+	public int tokenize(CharSequence text) {
+		tokens = 0;
+		arenaLength = 0;
+		start[0] = 0;
+		cleaner.tokenize(text, this);
+		return tokens;
+	}
+
+	@Override
+	public void token(char[] buffer, int offset, int length) {
+		if (tokens + 1 == hash.length) {
+			long[] biggerHash = new long[hash.length * 2];
+			System.arraycopy(hash, 0, biggerHash, 0, tokens);
+			hash = biggerHash;
+			int[] biggerStart = new int[hash.length + 1];
+			System.arraycopy(start, 0, biggerStart, 0, tokens + 1);
+			start = biggerStart;
+		}
+		if (arenaLength + length > arena.length) {
+			char[] bigger = new char[Math.max(arena.length * 2, arenaLength + length)];
+			System.arraycopy(arena, 0, bigger, 0, arenaLength);
+			arena = bigger;
+		}
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < length; i++) {
+			char c = buffer[offset + i];
+			arena[arenaLength++] = c;
+			h = (h ^ c) * 0x100000001b3L;
+		}
+		hash[tokens++] = mix(h);
+		start[tokens] = arenaLength;
+	}
+
+	/**
+	 * Fill fingerprints[n] for every n-gram starting at the token.
+	 *
+	 * @param fingerprints array of at least MAX_N + 1 entries
+	 * @return the largest n filled, below MIN_N when none
+	 */
+	public int fingerprints(int first, long[] fingerprints) {
+		int max = Math.min(MAX_N, tokens - first);
+		long h = hash[first];
+		for (int n = 2; n <= max; n++) {
+			h = h * MULTIPLIER + hash[first + n - 1];
+			fingerprints[n] = mix(h ^ n);
+		}
+		return max;
+	}
+
+	/**
+	 * Append the words of an n-gram separated by single spaces.
+	 */
+	public StringBuilder surface(int first, int n, StringBuilder out) {
+		for (int i = first; i < first + n; i++) {
+			if (i > first)
+				out.append(' ');
+			out.append(arena, start[i], start[i + 1] - start[i]);
+		}
+		return out;
+	}
+
+	/**
+	 * @return number of tokens of the last text
+	 */
+	public int size() {
+		return tokens;
+	}
+
+	/**
+	 * MurmurHash3 finaliser.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,105 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Fixed-width shuffle key of an n-gram: its 64-bit fingerprint and its length.<br>
+ * Serialised as 9 bytes and compared on the raw bytes, so sorting never
+ * deserialises keys. The surface text is not carried; see {@link NgramGenerator}.
+ */
+public class NgramKey implements WritableComparable<NgramKey> {
+
+	public static final int SIZE = 9;
+
+	private long fingerprint;
+	private int length;
+
+	public NgramKey() {
+	}
+
+	public NgramKey(long fingerprint, int length) {
+		set(fingerprint, length);
+	}
+
+	public void set(long fingerprint, int length) {
+		this.fingerprint = fingerprint;
+		this.length = length;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(fingerprint);
+		out.writeByte(length);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		fingerprint = in.readLong();
+		length = in.readUnsignedByte();
+	}
+
+	/**
+	 * Same order as the raw comparator: unsigned fingerprint, then length.
+	 */
+	@Override
+	public int compareTo(NgramKey other) {
+		int c = Long.compareUnsigned(fingerprint, other.fingerprint);
+		return c != 0 ? c : Integer.compare(length, other.length);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof NgramKey))
+			return false;
+		NgramKey other = (NgramKey) o;
+		return fingerprint == other.fingerprint && length == other.length;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (fingerprint ^ (fingerprint >>> 32));
+	}
+
+	/**
+	 * @return the fingerprint
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return the number of words
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toHexString(fingerprint) + "/" + length;
+	}
+
+	/**
+	 * Compares the 9 serialised bytes directly.
+	 */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+			super(NgramKey.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			return compareBytes(b1, s1, SIZE, b2, s2, SIZE);
+		}
+	}
+
+	static {
+		WritableComparator.define(NgramKey.class, new Comparator());
+	}
+}
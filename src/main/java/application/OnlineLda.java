@@ -0,0 +1,456 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Online variational Bayes for LDA (Hoffman, Blei and Bach, 2010).<br>
+ * Documents come in mini-batches, from an iterator, and are dropped once
+ * their batch is done: memory follows the batch size and the K x V
+ * variational parameters lambda of the topics, never the corpus. For each
+ * batch the E-step fits the topic proportions of every document, on several
+ * threads, and the M-step moves lambda towards the estimate of the batch
+ * with weight rho = (tau0 + t)^-kappa. lambda is kept as scale * raw + shift,
+ * so that the decay of the M-step costs nothing and a batch only touches
+ * the words it contains.
+ */
+public class OnlineLda {
+
+	private static final int E_STEP_ITERATIONS = 100;
+	private static final double E_STEP_TOLERANCE = 1e-3;
+
+	/**
+	 * raw is rescaled to lambda when the scale falls under this<br>
+	 */
+	private static final double MIN_SCALE = 1e-9;
+
+	private final int K;
+	private final int V;
+	private final double alpha;
+	private final double eta;
+	private final double tau0;
+	private final double kappa;
+
+	/**
+	 * lambda[k * V + w] = scale * raw[k * V + w] + shift<br>
+	 */
+	private final double[] raw;
+	private final double[] rawSum;
+	private double scale = 1;
+	private double shift = 0;
+
+	/**
+	 * batches seen, t in the weight of the M-step<br>
+	 */
+	private int updates;
+
+	private final RandomStream random;
+	private int threads = 1;
+	private Worker[] workers;
+
+	/**
+	 * column of each word of the current batch in expElogbeta, -1 for the others<br>
+	 */
+	private final int[] column;
+	private int[] batchWords = new int[1024];
+	private int columns;
+
+	/**
+	 * exp(E[log beta]) of the words of the batch, expElogbeta[column * K + k]<br>
+	 */
+	private double[] expElogbeta = new double[0];
+
+	/**
+	 * With the defaults of Hoffman et al., tau0 = 1024 and kappa = 0.7.
+	 *
+	 * @param alpha prior on the topic proportions of a document
+	 * @param eta   prior on the words of a topic
+	 */
+	public OnlineLda(int K, int V, double alpha, double eta, RandomStream random) {
+		this(K, V, alpha, eta, 1024, 0.7, random);
+	}
+
+	/**
+	 * @param tau0  delay, down-weights the first batches
+	 * @param kappa forgetting rate, in (0.5, 1]
+	 */
+	public OnlineLda(int K, int V, double alpha, double eta, double tau0, double kappa, RandomStream random) {
+		this.K = K;
+		this.V = V;
+		this.alpha = alpha;
+		this.eta = eta;
+		this.tau0 = tau0;
+		this.kappa = kappa;
+		this.random = random;
+		raw = new double[K * V];
+		rawSum = new double[K];
+		// around 1, as Gamma(100, 1/100) in the reference implementation
+		for (int k = 0; k < K; k++) {
+			for (int w = 0; w < V; w++) {
+				raw[k * V + w] = 0.7 + 0.6 * random.nextDouble();
+				rawSum[k] += raw[k * V + w];
+			}
+		}
+		column = new int[V];
+		Arrays.fill(column, -1);
+	}
+
+	/**
+	 * Run the E-step of each batch on several threads, in a pool that lives
+	 * as long as a call to train() or update().
+	 */
+	public void parallel(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * One pass over documents, in batches.
+	 *
+	 * @param documents  term ids of each document
+	 * @param batchSize  documents per batch
+	 * @param corpusSize number of documents of the corpus, or an estimate
+	 */
+	public void train(Iterator<int[]> documents, int batchSize, long corpusSize) {
+		ForkJoinPool pool = pool();
+		try {
+			List<int[]> batch = new ArrayList<int[]>(batchSize);
+			while (documents.hasNext()) {
+				batch.add(documents.next());
+				if (batch.size() == batchSize) {
+					update(batch, corpusSize, pool);
+					batch.clear();
+				}
+			}
+			update(batch, corpusSize, pool);
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * E-step and M-step over one batch.
+	 *
+	 * @param corpusSize number of documents of the corpus, or an estimate
+	 */
+	public void update(List<int[]> batch, long corpusSize) {
+		ForkJoinPool pool = pool();
+		try {
+			update(batch, corpusSize, pool);
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * The workers, made once per thread count, and a pool for them.
+	 *
+	 * @return null with a single thread
+	 */
+	private ForkJoinPool pool() {
+		if (workers == null || workers.length != threads) {
+			workers = new Worker[threads];
+			for (int t = 0; t < threads; t++) {
+				workers[t] = new Worker(random.split());
+			}
+		}
+		return threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	private void update(List<int[]> batch, long corpusSize, ForkJoinPool pool) {
+		int B = batch.size();
+		if (B == 0)
+			return;
+		final int[][] cols = new int[B][];
+		final int[][] counts = new int[B][];
+		columns = 0;
+		for (int b = 0; b < B; b++) {
+			compact(batch.get(b), b, cols, counts);
+		}
+		computeExpElogbeta();
+
+		final int threads = workers.length;
+		if (pool == null) {
+			workers[0].eStep(cols, counts, 0, B);
+		} else {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(threads);
+			for (int t = 0; t < threads; t++) {
+				final Worker worker = workers[t];
+				final int start = (int) ((long) B * t / threads);
+				final int end = (int) ((long) B * (t + 1) / threads);
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						worker.eStep(cols, counts, start, end);
+						return null;
+					}
+				});
+			}
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("interrupted during the E-step", e);
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("E-step failed", e.getCause());
+				}
+			}
+		}
+
+		double[] sstats = workers[0].sstats;
+		for (int t = 1; t < threads; t++) {
+			double[] other = workers[t].sstats;
+			for (int i = 0; i < columns * K; i++) {
+				sstats[i] += other[i];
+			}
+		}
+
+		double rho = Math.pow(tau0 + updates, -kappa);
+		updates++;
+		if (scale * (1 - rho) < MIN_SCALE) {
+			for (int k = 0; k < K; k++) {
+				rawSum[k] = 0;
+				for (int w = 0; w < V; w++) {
+					int i = k * V + w;
+					raw[i] = (1 - rho) * (scale * raw[i] + shift) + rho * eta;
+					rawSum[k] += raw[i];
+				}
+			}
+			scale = 1;
+			shift = 0;
+		} else {
+			scale *= 1 - rho;
+			shift = (1 - rho) * shift + rho * eta;
+		}
+		double weight = rho * corpusSize / B / scale;
+		for (int c = 0; c < columns; c++) {
+			int w = batchWords[c];
+			for (int k = 0; k < K; k++) {
+				double add = weight * sstats[c * K + k] * expElogbeta[c * K + k];
+				raw[k * V + w] += add;
+				rawSum[k] += add;
+			}
+			column[w] = -1;
+		}
+	}
+
+	/**
+	 * Distinct terms of a document, as columns of the batch, and their counts.
+	 */
+	private void compact(int[] doc, int b, int[][] cols, int[][] counts) {
+		int[] sorted = doc.clone();
+		Arrays.sort(sorted);
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1])
+				n++;
+		}
+		cols[b] = new int[n];
+		counts[b] = new int[n];
+		n = -1;
+		for (int i = 0; i < sorted.length; i++) {
+			int w = sorted[i];
+			if (i == 0 || w != sorted[i - 1]) {
+				n++;
+				if (column[w] < 0) {
+					if (columns == batchWords.length) {
+						batchWords = Arrays.copyOf(batchWords, columns * 2);
+					}
+					column[w] = columns;
+					batchWords[columns++] = w;
+				}
+				cols[b][n] = column[w];
+			}
+			counts[b][n]++;
+		}
+	}
+
+	private void computeExpElogbeta() {
+		if (expElogbeta.length < columns * K) {
+			expElogbeta = new double[Math.max(columns, 2 * expElogbeta.length / Math.max(1, K)) * K];
+		}
+		for (int k = 0; k < K; k++) {
+			double total = digamma(scale * rawSum[k] + shift * V);
+			for (int c = 0; c < columns; c++) {
+				expElogbeta[c * K + k] = Math.exp(digamma(scale * raw[k * V + batchWords[c]] + shift) - total);
+			}
+		}
+	}
+
+	/**
+	 * Topic proportions of a new document under the current topics.
+	 *
+	 * @return theta, K entries
+	 */
+	public double[] inference(int[] doc) {
+		int[][] cols = new int[1][];
+		int[][] counts = new int[1][];
+		columns = 0;
+		compact(doc, 0, cols, counts);
+		computeExpElogbeta();
+		for (int c = 0; c < columns; c++) {
+			column[batchWords[c]] = -1;
+		}
+		Worker worker = new Worker(random.split());
+		worker.fit(cols[0], counts[0]);
+		double sum = 0;
+		for (double g : worker.gamma) {
+			sum += g;
+		}
+		double[] theta = new double[K];
+		for (int k = 0; k < K; k++) {
+			theta[k] = worker.gamma[k] / sum;
+		}
+		return theta;
+	}
+
+	/**
+	 * Fits the documents of a range of the batch and sums their statistics.
+	 */
+	private class Worker {
+
+		final RandomStream random;
+		final double[] gamma = new double[K];
+		final double[] expElogtheta = new double[K];
+		final double[] acc = new double[K];
+		double[] phinorm = new double[64];
+		double[] sstats = new double[0];
+
+		Worker(RandomStream random) {
+			this.random = random;
+		}
+
+		void eStep(int[][] cols, int[][] counts, int start, int end) {
+			if (sstats.length < columns * K) {
+				sstats = new double[expElogbeta.length];
+			} else {
+				Arrays.fill(sstats, 0, columns * K, 0);
+			}
+			for (int b = start; b < end; b++) {
+				int[] c = cols[b];
+				int[] cnt = counts[b];
+				fit(c, cnt);
+				for (int i = 0; i < c.length; i++) {
+					double ratio = cnt[i] / phinorm[i];
+					int base = c[i] * K;
+					for (int k = 0; k < K; k++) {
+						sstats[base + k] += expElogtheta[k] * ratio;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Fit gamma, then leave phinorm to match the final expElogtheta.
+		 */
+		void fit(int[] c, int[] cnt) {
+			int n = c.length;
+			if (phinorm.length < n) {
+				phinorm = new double[Math.max(n, 2 * phinorm.length)];
+			}
+			for (int k = 0; k < K; k++) {
+				gamma[k] = 0.7 + 0.6 * random.nextDouble();
+			}
+			expElog();
+			norm(c, n);
+			for (int it = 0; it < E_STEP_ITERATIONS; it++) {
+				Arrays.fill(acc, 0);
+				for (int i = 0; i < n; i++) {
+					double ratio = cnt[i] / phinorm[i];
+					int base = c[i] * K;
+					for (int k = 0; k < K; k++) {
+						acc[k] += ratio * expElogbeta[base + k];
+					}
+				}
+				double change = 0;
+				for (int k = 0; k < K; k++) {
+					double g = alpha + expElogtheta[k] * acc[k];
+					change += Math.abs(g - gamma[k]);
+					gamma[k] = g;
+				}
+				expElog();
+				norm(c, n);
+				if (change / K < E_STEP_TOLERANCE)
+					break;
+			}
+		}
+
+		private void expElog() {
+			double sum = 0;
+			for (int k = 0; k < K; k++) {
+				sum += gamma[k];
+			}
+			double total = digamma(sum);
+			for (int k = 0; k < K; k++) {
+				expElogtheta[k] = Math.exp(digamma(gamma[k]) - total);
+			}
+		}
+
+		private void norm(int[] c, int n) {
+			for (int i = 0; i < n; i++) {
+				int base = c[i] * K;
+				double dot = 1e-100;
+				for (int k = 0; k < K; k++) {
+					dot += expElogtheta[k] * expElogbeta[base + k];
+				}
+				phinorm[i] = dot;
+			}
+		}
+	}
+
+	/**
+	 * @return the expected topic--word distributions, lambda normalised (K x V)
+	 */
+	public double[][] getPhi() {
+		double[][] phi = new double[K][V];
+		for (int k = 0; k < K; k++) {
+			double total = scale * rawSum[k] + shift * V;
+			for (int w = 0; w < V; w++) {
+				phi[k][w] = (scale * raw[k * V + w] + shift) / total;
+			}
+		}
+		return phi;
+	}
+
+	/**
+	 * Digamma function for x > 0: recurrence up to 6, then the asymptotic series.
+	 */
+	static double digamma(double x) {
+		double result = 0;
+		while (x < 6) {
+			result -= 1 / x;
+			x += 1;
+		}
+		double f = 1 / (x * x);
+		return result + Math.log(x) - 0.5 / x
+				- f * (1.0 / 12 - f * (1.0 / 120 - f * (1.0 / 252 - f * (1.0 / 240 - f / 132))));
+	}
+
+	// ---- GET AND SETS ----
+
+	public int getK() {
+		return K;
+	}
+
+	public int getV() {
+		return V;
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	public double getEta() {
+		return eta;
+	}
+}
@@ -0,0 +1,56 @@
+package application;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/**
+ * Lazily built StanfordCoreNLP pipelines, one per annotator set per JVM.<br>
+ * Loading the POS and NER models takes seconds, so map tasks running in a
+ * reused JVM pick up the pipeline built by the first task instead of loading
+ * the models again.
+ */
+public class PipelineHolder {
+
+	/**
+	 * job configuration key holding the comma separated annotator list<br>
+	 */
+	public static final String ANNOTATORS_KEY = "reviews.topics.annotators";
+
+	public static final String DEFAULT_ANNOTATORS = "tokenize, ssplit, pos, lemma, ner";
+
+	private static final Map<String, StanfordCoreNLP> pipelines = new HashMap<String, StanfordCoreNLP>();
+
+	/**
+	 * @param annotators comma separated annotator list
+	 * @return the shared pipeline for that annotator set
+	 */
+	public static synchronized StanfordCoreNLP get(String annotators) {
+		String key = normalize(annotators);
+		StanfordCoreNLP pipeline = pipelines.get(key);
+		if (pipeline == null) {
+			Properties props = new Properties();
+			props.setProperty("annotators", key);
+			pipeline = new StanfordCoreNLP(props);
+			pipelines.put(key, pipeline);
+		}
+		return pipeline;
+	}
+
+	private static String normalize(String annotators) {
+		if (annotators == null || annotators.trim().isEmpty()) {
+			annotators = DEFAULT_ANNOTATORS;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String annotator : annotators.split(",")) {
+			if (annotator.trim().isEmpty())
+				continue;
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(annotator.trim());
+		}
+		return sb.toString();
+	}
+}
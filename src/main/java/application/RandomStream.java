@@ -0,0 +1,51 @@
+package application;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random numbers for the topic samplers.<br>
+ * Backed by SplittableRandom, which is not synchronized: a stream belongs to
+ * one thread, and each worker gets its own with {@link #split}. Streams split
+ * in the same order from the same seed produce the same numbers, so a
+ * seeded run can be replayed exactly.
+ */
+public final class RandomStream {
+
+	private final SplittableRandom random;
+
+	/**
+	 * A stream with an unpredictable seed.
+	 */
+	public RandomStream() {
+		this(new SplittableRandom());
+	}
+
+	public RandomStream(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	private RandomStream(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * @return uniform in [0, 1)
+	 */
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	/**
+	 * @return uniform in [0, bound)
+	 */
+	public int nextInt(int bound) {
+		return random.nextInt(bound);
+	}
+
+	/**
+	 * @return a new independent stream, for another thread
+	 */
+	public RandomStream split() {
+		return new RandomStream(random.split());
+	}
+}
@@ -0,0 +1,276 @@
+package application;
+
+import java.util.Locale;
+
+/**
+ * Allocation-free conversions between review dates and epoch days.<br>
+ * Reviews carry their date as "MMM dd, yyyy" (e.g. "May 20, 2017"). The parser
+ * accepts what the lenient US SimpleDateFormat of that pattern accepted: short
+ * or full month names in any case, and days past the end of a month rolling
+ * over into the next one. It keeps no state and is safe to share.<br>
+ * A day also falls in the buckets of coarser {@link Granularity granularities},
+ * each an int that sorts in time order.
+ */
+public class ReviewDates {
+
+	/**
+	 * Periods a day can be rolled up into.
+	 */
+	public static enum Granularity {
+		/** bucket: the epoch day, printed dd/MM/yyyy */
+		DAY,
+		/** bucket: the epoch day of the Monday of the ISO week, printed yyyy-Www */
+		WEEK,
+		/** bucket: year * 12 + month - 1, printed MM/yyyy */
+		MONTH,
+		/** bucket: the year, printed yyyy */
+		YEAR;
+
+		public int bucket(int epochDay) {
+			switch (this) {
+			case WEEK:
+				return epochDay - Math.floorMod(epochDay + 3, 7);
+			case MONTH:
+				int civil = civilFromDays(epochDay);
+				return (civil >> 9) * 12 + ((civil >> 5) & 0xF) - 1;
+			case YEAR:
+				return civilFromDays(epochDay) >> 9;
+			default:
+				return epochDay;
+			}
+		}
+
+		public String format(int bucket) {
+			switch (this) {
+			case WEEK:
+				int thursday = bucket + 3;
+				int year = civilFromDays(thursday) >> 9;
+				int week = (thursday - daysFromCivil(year, 1, 1)) / 7 + 1;
+				return year + (week < 10 ? "-W0" : "-W") + week;
+			case MONTH:
+				int month = Math.floorMod(bucket, 12) + 1;
+				return (month < 10 ? "0" : "") + month + "/" + Math.floorDiv(bucket, 12);
+			case YEAR:
+				return Integer.toString(bucket);
+			default:
+				return formatDay(bucket);
+			}
+		}
+
+		/**
+		 * @param names comma separated, in any case
+		 */
+		public static Granularity[] parse(String names) {
+			String[] parts = names.split(",");
+			Granularity[] result = new Granularity[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				result[i] = valueOf(parts[i].trim().toUpperCase(Locale.ROOT));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * returned when a date cannot be parsed<br>
+	 */
+	public static final int INVALID = Integer.MIN_VALUE;
+
+	private static final String[] MONTHS = { "january", "february", "march", "april", "may", "june", "july",
+			"august", "september", "october", "november", "december" };
+
+	/**
+	 * @return days since 1970-01-01 of a "MMM dd, yyyy" date held as ASCII bytes, or {@link #INVALID}
+	 */
+	public static int parseEpochDay(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		int i = skipSpaces(bytes, offset, end);
+		int monthStart = i;
+		while (i < end && isLetter(bytes[i])) {
+			i++;
+		}
+		int month = month(bytes, monthStart, i);
+		if (month < 0)
+			return INVALID;
+
+		i = skipSpaces(bytes, i, end);
+		int dayStart = i;
+		int day = 0;
+		while (i < end && isDigit(bytes[i])) {
+			day = day * 10 + (bytes[i++] - '0');
+		}
+		if (i == dayStart || i - dayStart > 2 || i >= end || bytes[i] != ',')
+			return INVALID;
+
+		i = skipSpaces(bytes, i + 1, end);
+		int yearStart = i;
+		int year = 0;
+		while (i < end && isDigit(bytes[i])) {
+			year = year * 10 + (bytes[i++] - '0');
+		}
+		if (i == yearStart || i - yearStart > 4)
+			return INVALID;
+		return daysFromCivil(year, month + 1, 1) + day - 1;
+	}
+
+	/**
+	 * @return days since 1970-01-01 of a "MMM dd, yyyy" date, or {@link #INVALID}
+	 */
+	public static int parseEpochDay(CharSequence date) {
+		int end = date.length();
+		int i = skipSpaces(date, 0, end);
+		int monthStart = i;
+		while (i < end && date.charAt(i) < 0x80 && isLetter((byte) date.charAt(i))) {
+			i++;
+		}
+		int month = month(date, monthStart, i);
+		if (month < 0)
+			return INVALID;
+
+		i = skipSpaces(date, i, end);
+		int dayStart = i;
+		int day = 0;
+		while (i < end && isDigit(date.charAt(i))) {
+			day = day * 10 + (date.charAt(i++) - '0');
+		}
+		if (i == dayStart || i - dayStart > 2 || i >= end || date.charAt(i) != ',')
+			return INVALID;
+
+		i = skipSpaces(date, i + 1, end);
+		int yearStart = i;
+		int year = 0;
+		while (i < end && isDigit(date.charAt(i))) {
+			year = year * 10 + (date.charAt(i++) - '0');
+		}
+		if (i == yearStart || i - yearStart > 4)
+			return INVALID;
+		return daysFromCivil(year, month + 1, 1) + day - 1;
+	}
+
+	/**
+	 * @return days since 1970-01-01 of an ISO "yyyy-MM-dd" date, used for job settings
+	 */
+	public static int parseIsoDate(String date) {
+		String[] parts = date.trim().split("-");
+		if (parts.length != 3)
+			throw new IllegalArgumentException("expected yyyy-MM-dd: " + date);
+		return daysFromCivil(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+	}
+
+	/**
+	 * @return the epoch day printed as dd/MM/yyyy
+	 */
+	public static String formatDay(int epochDay) {
+		int civil = civilFromDays(epochDay);
+		int year = civil >> 9;
+		int month = (civil >> 5) & 0xF;
+		int day = civil & 0x1F;
+		char[] out = new char[10];
+		out[0] = (char) ('0' + day / 10);
+		out[1] = (char) ('0' + day % 10);
+		out[2] = '/';
+		out[3] = (char) ('0' + month / 10);
+		out[4] = (char) ('0' + month % 10);
+		out[5] = '/';
+		out[6] = (char) ('0' + year / 1000 % 10);
+		out[7] = (char) ('0' + year / 100 % 10);
+		out[8] = (char) ('0' + year / 10 % 10);
+		out[9] = (char) ('0' + year % 10);
+		return new String(out);
+	}
+
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's algorithm).<br>
+	 *
+	 * @param month 1..12
+	 */
+	public static int daysFromCivil(int year, int month, int day) {
+		year -= month <= 2 ? 1 : 0;
+		int era = (year >= 0 ? year : year - 399) / 400;
+		int yoe = year - era * 400;
+		int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	/**
+	 * Inverse of {@link #daysFromCivil}.<br>
+	 *
+	 * @return the date packed as year << 9 | month << 5 | day
+	 */
+	public static int civilFromDays(int epochDay) {
+		int z = epochDay + 719468;
+		int era = (z >= 0 ? z : z - 146096) / 146097;
+		int doe = z - era * 146097;
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int year = yoe + era * 400;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp + (mp < 10 ? 3 : -9);
+		if (month <= 2)
+			year++;
+		return (year << 9) | (month << 5) | day;
+	}
+
+	private static int month(byte[] bytes, int from, int to) {
+		int length = to - from;
+		if (length < 3)
+			return -1;
+		for (int m = 0; m < MONTHS.length; m++) {
+			String name = MONTHS[m];
+			if (length != 3 && length != name.length())
+				continue;
+			int i = 0;
+			while (i < length && (bytes[from + i] | 0x20) == name.charAt(i)) {
+				i++;
+			}
+			if (i == length)
+				return m;
+		}
+		return -1;
+	}
+
+	private static int month(CharSequence date, int from, int to) {
+		int length = to - from;
+		if (length < 3)
+			return -1;
+		for (int m = 0; m < MONTHS.length; m++) {
+			String name = MONTHS[m];
+			if (length != 3 && length != name.length())
+				continue;
+			int i = 0;
+			while (i < length && (date.charAt(from + i) | 0x20) == name.charAt(i)) {
+				i++;
+			}
+			if (i == length)
+				return m;
+		}
+		return -1;
+	}
+
+	private static int skipSpaces(CharSequence date, int i, int end) {
+		while (i < end && date.charAt(i) == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static int skipSpaces(byte[] bytes, int i, int end) {
+		while (i < end && bytes[i] == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isLetter(byte c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+}
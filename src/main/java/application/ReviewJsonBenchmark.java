@@ -0,0 +1,100 @@
+package application;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Micro-benchmark of the Gson map path against {@link ReviewJsonDecoder}.<br>
+ * Usage: ReviewJsonBenchmark [json lines file] [records per round]
+ */
+public class ReviewJsonBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	/**
+	 * keeps the decoded results alive so the JIT cannot drop the work<br>
+	 */
+	static long sink;
+
+	public static void main(String[] args) throws IOException {
+		String path = args.length > 0 ? args[0] : "jsonfiles/employee.json";
+		int records = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+
+		// only the records both paths read and that have a text are timed
+		List<Text> lines = new ArrayList<Text>();
+		ReviewJsonDecoder reader = new ReviewJsonDecoder();
+		VariablesJson review = new VariablesJson();
+		int skipped = 0;
+		for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+			if (line.trim().isEmpty())
+				continue;
+			Text value = new Text(line);
+			if (hasText(reader.decode(value, review)) && hasText(gson(line))) {
+				lines.add(value);
+			} else {
+				skipped++;
+			}
+		}
+		if (skipped > 0) {
+			System.out.println(skipped + " records skipped, not reviews or without text");
+		}
+		if (lines.isEmpty()) {
+			System.out.println("no records in " + path);
+			return;
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long gson = gson(lines, records);
+			long decoder = decoder(lines, records);
+			System.out.printf("round %d: gson %.0f rec/s, decoder %.0f rec/s (x%.1f)%n", round,
+					records * 1e9 / gson, records * 1e9 / decoder, (double) gson / decoder);
+		}
+	}
+
+	private static boolean hasText(VariablesJson review) {
+		return review != null && review.getText() != null;
+	}
+
+	/**
+	 * @return the review, or null when Gson cannot read it as one
+	 */
+	private static VariablesJson gson(String line) {
+		try {
+			return ReadDataFromJSONFILE2.getVariable(line);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static long gson(List<Text> lines, int records) {
+		long check = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < records; i++) {
+			VariablesJson review = ReadDataFromJSONFILE2.getVariable(lines.get(i % lines.size()).toString());
+			check += review.getText().length();
+		}
+		long elapsed = System.nanoTime() - start;
+		sink += check;
+		return elapsed;
+	}
+
+	private static long decoder(List<Text> lines, int records) {
+		ReviewJsonDecoder decoder = new ReviewJsonDecoder();
+		VariablesJson review = new VariablesJson();
+		long check = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < records; i++) {
+			decoder.decode(lines.get(i % lines.size()), review);
+			check += review.getText().length();
+		}
+		long elapsed = System.nanoTime() - start;
+		sink += check;
+		return elapsed;
+	}
+}
@@ -0,0 +1,376 @@
+package application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Pull decoder for one review line that reads only the fields the jobs use.<br>
+ * The line is scanned once straight from the UTF-8 bytes: the wanted fields are
+ * located as byte spans and every other value (author, collectedAt, ...) is
+ * skipped without being materialised. Strings are only built when asked for.
+ * An instance holds reusable buffers and is meant to live as long as a mapper.
+ */
+public class ReviewJsonDecoder {
+
+	public static final int ID = 0;
+	public static final int TITLE = 1;
+	public static final int CREATED_AT = 2;
+	public static final int TEXT = 3;
+	public static final int QUERY = 4;
+
+	private static final int FIELDS = 5;
+
+	private static final byte[][] KEYS = {
+			null,
+			"title".getBytes(StandardCharsets.UTF_8),
+			"createdAt".getBytes(StandardCharsets.UTF_8),
+			"text".getBytes(StandardCharsets.UTF_8),
+			"query".getBytes(StandardCharsets.UTF_8) };
+
+	private static final byte[] ID_KEY = "_id".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] OID_KEY = "$oid".getBytes(StandardCharsets.UTF_8);
+
+	private byte[] bytes;
+	private int pos;
+	private int end;
+
+	/**
+	 * start[f] offset of the first byte inside the quotes of field f, -1 when absent<br>
+	 */
+	private final int[] start = new int[FIELDS];
+
+	/**
+	 * end[f] offset of the closing quote of field f<br>
+	 */
+	private final int[] stop = new int[FIELDS];
+
+	/**
+	 * escaped[f] true when the string of field f contains a backslash escape<br>
+	 */
+	private final boolean[] escaped = new boolean[FIELDS];
+
+	private boolean lastEscaped;
+
+	private char[] chars = new char[256];
+
+	/**
+	 * Locate the review fields of a JSON object.<br>
+	 *
+	 * @return false when the line is not a JSON object
+	 */
+	public boolean scan(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.pos = offset;
+		this.end = offset + length;
+		for (int f = 0; f < FIELDS; f++) {
+			start[f] = -1;
+		}
+		try {
+			if (next() != '{')
+				return false;
+			if (peek() == '}')
+				return true;
+			while (true) {
+				if (next() != '"')
+					return false;
+				int keyStart = pos;
+				int keyEnd = skipString();
+				if (next() != ':')
+					return false;
+				int field = field(keyStart, keyEnd);
+				byte c = peek();
+				if (field >= 0 && c == '"') {
+					pos++;
+					start[field] = pos;
+					stop[field] = skipString();
+					escaped[field] = lastEscaped;
+				} else if (field == ID && c == '{') {
+					scanId();
+				} else {
+					skipValue();
+				}
+				c = next();
+				if (c == '}')
+					return true;
+				if (c != ',')
+					return false;
+			}
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	public boolean scan(Text value) {
+		return scan(value.getBytes(), 0, value.getLength());
+	}
+
+	/**
+	 * @return true when the last scanned line holds a string for the field
+	 */
+	public boolean has(int field) {
+		return start[field] >= 0;
+	}
+
+	/**
+	 * @return the decoded string of the field, null when absent
+	 */
+	public String getString(int field) {
+		if (start[field] < 0)
+			return null;
+		if (!escaped[field])
+			return new String(bytes, start[field], stop[field] - start[field], StandardCharsets.UTF_8);
+		int n = unescape(start[field], stop[field]);
+		return new String(chars, 0, n);
+	}
+
+	/**
+	 * Copy the field into a reused Text, straight from the line bytes when it has no escapes.
+	 */
+	public void copy(int field, Text target) {
+		if (start[field] < 0) {
+			target.clear();
+		} else if (!escaped[field]) {
+			target.set(bytes, start[field], stop[field] - start[field]);
+		} else {
+			target.set(getString(field));
+		}
+	}
+
+	/**
+	 * Compare the field with UTF-8 bytes without decoding it.
+	 */
+	public boolean fieldEquals(int field, byte[] value) {
+		if (start[field] < 0)
+			return false;
+		if (escaped[field])
+			return Arrays.equals(getString(field).getBytes(StandardCharsets.UTF_8), value);
+		return equals(start[field], stop[field], value);
+	}
+
+	/**
+	 * @return the field parsed as a review date in epoch days, or {@link ReviewDates#INVALID}
+	 */
+	public int getEpochDay(int field) {
+		if (start[field] < 0)
+			return ReviewDates.INVALID;
+		return ReviewDates.parseEpochDay(bytes, start[field], stop[field] - start[field]);
+	}
+
+	/**
+	 * Decode a review line into a reused {@link VariablesJson}.<br>
+	 *
+	 * @return the review, or null when the line is not a JSON object
+	 */
+	public VariablesJson decode(Text value, VariablesJson review) {
+		return decode(value.getBytes(), 0, value.getLength(), review);
+	}
+
+	public VariablesJson decode(byte[] bytes, int offset, int length, VariablesJson review) {
+		if (!scan(bytes, offset, length))
+			return null;
+		review.set(getString(ID), getString(TITLE), getString(CREATED_AT), getString(TEXT), getString(QUERY));
+		return review;
+	}
+
+	// ---------------------------------------------- SCANNER ------------------------------------------------------------------------------------
+
+	private void scanId() {
+		pos++;
+		if (peek() == '}') {
+			pos++;
+			return;
+		}
+		while (true) {
+			expect('"');
+			int keyStart = pos;
+			int keyEnd = skipString();
+			expect(':');
+			if (peek() == '"' && equals(keyStart, keyEnd, OID_KEY)) {
+				pos++;
+				start[ID] = pos;
+				stop[ID] = skipString();
+				escaped[ID] = lastEscaped;
+			} else {
+				skipValue();
+			}
+			byte c = next();
+			if (c == '}')
+				return;
+			if (c != ',')
+				throw new IllegalArgumentException("malformed _id");
+		}
+	}
+
+	private int field(int keyStart, int keyEnd) {
+		if (equals(keyStart, keyEnd, ID_KEY))
+			return ID;
+		for (int f = 1; f < FIELDS; f++) {
+			if (equals(keyStart, keyEnd, KEYS[f]))
+				return f;
+		}
+		return -1;
+	}
+
+	private boolean equals(int from, int to, byte[] key) {
+		if (to - from != key.length)
+			return false;
+		for (int i = 0; i < key.length; i++) {
+			if (bytes[from + i] != key[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Skip the body of a string whose opening quote was consumed.<br>
+	 * A \\u escape must be followed by four hex digits, so that the field
+	 * decodes later without error.
+	 *
+	 * @return offset of the closing quote
+	 */
+	private int skipString() {
+		lastEscaped = false;
+		while (pos < end) {
+			byte c = bytes[pos];
+			if (c == '"') {
+				return pos++;
+			}
+			if (c == '\\') {
+				lastEscaped = true;
+				pos++;
+				if (pos < end && bytes[pos] == 'u') {
+					if (pos + 4 >= end)
+						throw new IllegalArgumentException("unterminated unicode escape");
+					for (int i = 1; i <= 4; i++) {
+						hex(bytes[pos + i]);
+					}
+					pos += 4;
+				}
+			}
+			pos++;
+		}
+		throw new IllegalArgumentException("unterminated string");
+	}
+
+	private void skipValue() {
+		byte c = peek();
+		if (c == '"') {
+			pos++;
+			skipString();
+		} else if (c == '{' || c == '[') {
+			int depth = 0;
+			do {
+				if (pos >= end)
+					throw new IllegalArgumentException("unterminated value");
+				c = bytes[pos++];
+				if (c == '"') {
+					skipString();
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+			} while (depth > 0);
+		} else {
+			while (pos < end) {
+				c = bytes[pos];
+				if (c == ',' || c == '}' || c == ']' || isSpace(c))
+					break;
+				pos++;
+			}
+		}
+	}
+
+	private byte next() {
+		byte c = peek();
+		pos++;
+		return c;
+	}
+
+	private byte peek() {
+		while (pos < end && isSpace(bytes[pos])) {
+			pos++;
+		}
+		if (pos >= end)
+			throw new IllegalArgumentException("unexpected end of line");
+		return bytes[pos];
+	}
+
+	private void expect(char c) {
+		if (next() != c)
+			throw new IllegalArgumentException("expected " + c);
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	// ---------------------------------------------- STRINGS ------------------------------------------------------------------------------------
+
+	/**
+	 * Decode escapes and UTF-8 of a string span into the char buffer.<br>
+	 * A malformed or truncated UTF-8 sequence becomes U+FFFD, never reading
+	 * past the span.
+	 *
+	 * @return number of chars written
+	 */
+	private int unescape(int from, int to) {
+		if (chars.length < to - from) {
+			chars = new char[Math.max(to - from, chars.length * 2)];
+		}
+		int n = 0;
+		int i = from;
+		while (i < to) {
+			int b = bytes[i++];
+			if (b == '\\') {
+				char e = (char) bytes[i++];
+				switch (e) {
+				case 'b': chars[n++] = '\b'; break;
+				case 'f': chars[n++] = '\f'; break;
+				case 'n': chars[n++] = '\n'; break;
+				case 'r': chars[n++] = '\r'; break;
+				case 't': chars[n++] = '\t'; break;
+				case 'u':
+					chars[n++] = (char) ((hex(bytes[i]) << 12) | (hex(bytes[i + 1]) << 8) | (hex(bytes[i + 2]) << 4) | hex(bytes[i + 3]));
+					i += 4;
+					break;
+				default: chars[n++] = e;
+				}
+			} else if (b >= 0) {
+				chars[n++] = (char) b;
+			} else {
+				int more = (b & 0xE0) == 0xC0 ? 1 : (b & 0xF0) == 0xE0 ? 2 : (b & 0xF8) == 0xF0 ? 3 : -1;
+				int cp = b & (0x3F >> more);
+				boolean valid = more > 0 && i + more <= to;
+				for (int k = 0; valid && k < more; k++) {
+					int c = bytes[i + k];
+					valid = (c & 0xC0) == 0x80;
+					cp = (cp << 6) | (c & 0x3F);
+				}
+				if (!valid || cp > Character.MAX_CODE_POINT) {
+					chars[n++] = '\uFFFD';
+				} else if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+					chars[n++] = Character.highSurrogate(cp);
+					chars[n++] = Character.lowSurrogate(cp);
+					i += more;
+				} else {
+					chars[n++] = (char) cp;
+					i += more;
+				}
+			}
+		}
+		return n;
+	}
+
+	private static int hex(byte c) {
+		if (c >= '0' && c <= '9')
+			return c - '0';
+		if (c >= 'a' && c <= 'f')
+			return c - 'a' + 10;
+		if (c >= 'A' && c <= 'F')
+			return c - 'A' + 10;
+		throw new IllegalArgumentException("bad unicode escape");
+	}
+}
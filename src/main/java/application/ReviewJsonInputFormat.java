@@ -0,0 +1,77 @@
+package application;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * Splittable input format for newline-delimited review files.<br>
+ * Mappers receive the byte offset of the line and a reused {@link ReviewWritable}.
+ * An optional query value and date range are checked on the raw line before
+ * the text fields are decoded, so rejected reviews never reach the mapper.
+ */
+public class ReviewJsonInputFormat extends FileInputFormat<LongWritable, ReviewWritable> {
+
+	public static enum Counter { ACCEPTED, REJECTED, MALFORMED }
+
+	public static final String QUERY_KEY = "review.input.query";
+	public static final String DATE_FROM_KEY = "review.input.date.from";
+	public static final String DATE_TO_KEY = "review.input.date.to";
+
+	/**
+	 * Keep only reviews whose query field equals the value.
+	 */
+	public static void setQueryFilter(Job job, String query) {
+		job.getConfiguration().set(QUERY_KEY, query);
+	}
+
+	/**
+	 * Keep only reviews created inside the inclusive range.
+	 *
+	 * @param from first day as yyyy-MM-dd, or null for no lower bound
+	 * @param to   last day as yyyy-MM-dd, or null for no upper bound
+	 */
+	public static void setDateRange(Job job, String from, String to) {
+		if (from != null)
+			job.getConfiguration().set(DATE_FROM_KEY, from);
+		if (to != null)
+			job.getConfiguration().set(DATE_TO_KEY, to);
+	}
+
+	@Override
+	public RecordReader<LongWritable, ReviewWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new ReviewRecordReader();
+	}
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+	}
+
+	/**
+	 * @return the query to keep as UTF-8 bytes, or null to keep every query
+	 */
+	static byte[] getQueryFilter(Configuration conf) {
+		String query = conf.get(QUERY_KEY);
+		return query == null ? null : query.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static int getDateFrom(Configuration conf) {
+		String from = conf.get(DATE_FROM_KEY);
+		return from == null ? Integer.MIN_VALUE : ReviewDates.parseIsoDate(from);
+	}
+
+	static int getDateTo(Configuration conf) {
+		String to = conf.get(DATE_TO_KEY);
+		return to == null ? Integer.MAX_VALUE : ReviewDates.parseIsoDate(to);
+	}
+}
@@ -0,0 +1,105 @@
+package application;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+/**
+ * Reads review lines of a split and decodes the ones that pass the filters.<br>
+ * Split boundaries are handled by the wrapped {@link LineRecordReader}.
+ */
+public class ReviewRecordReader extends RecordReader<LongWritable, ReviewWritable> {
+
+	private final LineRecordReader lines = new LineRecordReader();
+	private final ReviewJsonDecoder decoder = new ReviewJsonDecoder();
+	private final ReviewWritable review = new ReviewWritable();
+
+	private byte[] query;
+	private int dateFrom;
+	private int dateTo;
+
+	private Counter accepted;
+	private Counter rejected;
+	private Counter malformed;
+
+	@Override
+	public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+		lines.initialize(split, context);
+		Configuration conf = context.getConfiguration();
+		query = ReviewJsonInputFormat.getQueryFilter(conf);
+		dateFrom = ReviewJsonInputFormat.getDateFrom(conf);
+		dateTo = ReviewJsonInputFormat.getDateTo(conf);
+		if (context instanceof TaskInputOutputContext) {
+			TaskInputOutputContext<?, ?, ?, ?> taskContext = (TaskInputOutputContext<?, ?, ?, ?>) context;
+			accepted = taskContext.getCounter(ReviewJsonInputFormat.Counter.ACCEPTED);
+			rejected = taskContext.getCounter(ReviewJsonInputFormat.Counter.REJECTED);
+			malformed = taskContext.getCounter(ReviewJsonInputFormat.Counter.MALFORMED);
+		}
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException, InterruptedException {
+		while (lines.nextKeyValue()) {
+			Text line = lines.getCurrentValue();
+			if (!decoder.scan(line)) {
+				increment(malformed);
+				continue;
+			}
+			if (!accept()) {
+				increment(rejected);
+				continue;
+			}
+			review.set(decoder);
+			increment(accepted);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check the filters on the raw field spans of the scanned line.
+	 */
+	private boolean accept() {
+		if (query != null && !decoder.fieldEquals(ReviewJsonDecoder.QUERY, query))
+			return false;
+		if (dateFrom != Integer.MIN_VALUE || dateTo != Integer.MAX_VALUE) {
+			int day = decoder.getEpochDay(ReviewJsonDecoder.CREATED_AT);
+			if (day == ReviewDates.INVALID || day < dateFrom || day > dateTo)
+				return false;
+		}
+		return true;
+	}
+
+	private static void increment(Counter counter) {
+		if (counter != null)
+			counter.increment(1);
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return lines.getCurrentKey();
+	}
+
+	@Override
+	public ReviewWritable getCurrentValue() {
+		return review;
+	}
+
+	@Override
+	public float getProgress() throws IOException {
+		return lines.getProgress();
+	}
+
+	@Override
+	public void close() throws IOException {
+		lines.close();
+	}
+}
@@ -0,0 +1,74 @@
+package application;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Turns the text of a review into the words of its topic document.<br>
+ * The text goes through the shared CoreNLP pipeline of the task, see
+ * {@link PipelineHolder}; the tokens are lower-cased and those the
+ * {@link TokenFilter} of the job drops are left out: by default numbers,
+ * dates, amounts, links, words of up to two letters and stop words.
+ */
+public class ReviewTokenizer {
+
+	public static enum PipelineCounter { STARTUP_MILLIS, ANNOTATION_MICROS, ANNOTATED_REVIEWS }
+
+	private final StanfordCoreNLP pipeline;
+	private final TokenFilter filter;
+	private final Counter annotationMicros;
+	private final Counter annotatedReviews;
+
+	/**
+	 * Tokenizer using the pipeline of the annotators configured for the job.
+	 */
+	public ReviewTokenizer(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+		long start = System.currentTimeMillis();
+		pipeline = PipelineHolder.get(context.getConfiguration().get(PipelineHolder.ANNOTATORS_KEY));
+		filter = TokenFilter.get(context.getConfiguration());
+		context.getCounter(PipelineCounter.STARTUP_MILLIS).increment(System.currentTimeMillis() - start);
+		annotationMicros = context.getCounter(PipelineCounter.ANNOTATION_MICROS);
+		annotatedReviews = context.getCounter(PipelineCounter.ANNOTATED_REVIEWS);
+	}
+
+	/**
+	 * Append the words of the text to the list.
+	 *
+	 * @return the list
+	 */
+	public List<String> tokenize(String text, List<String> words) {
+		Annotation document = new Annotation(text);
+
+		long start = System.nanoTime();
+		pipeline.annotate(document);
+		annotationMicros.increment((System.nanoTime() - start) / 1000);
+		annotatedReviews.increment(1);
+
+		List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+
+		for (CoreMap sentence : sentences) {
+			for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+				if(filter.dropsEntity(token.get(NamedEntityTagAnnotation.class))) {
+					continue;
+				}
+				String word = token.get(TextAnnotation.class).toLowerCase().trim();
+				if(filter.accept(word)) {
+					words.add(word);
+				}
+			}
+		}
+		return words;
+	}
+}
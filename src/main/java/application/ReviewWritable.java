@@ -0,0 +1,106 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Decoded review handed to mappers by {@link ReviewJsonInputFormat}.<br>
+ * The record reader refills the same instance for every line, so mappers must
+ * copy anything they keep past the current map() call. Missing string fields
+ * are empty and a missing or unparseable date is {@link ReviewDates#INVALID}.
+ */
+public class ReviewWritable implements Writable {
+
+	private final Text id = new Text();
+	private final Text query = new Text();
+	private int epochDay = ReviewDates.INVALID;
+	private final Text title = new Text();
+	private final Text text = new Text();
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		id.write(out);
+		query.write(out);
+		out.writeInt(epochDay);
+		title.write(out);
+		text.write(out);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		id.readFields(in);
+		query.readFields(in);
+		epochDay = in.readInt();
+		title.readFields(in);
+		text.readFields(in);
+	}
+
+	/**
+	 * Fill the fields from the line last scanned by the decoder.
+	 */
+	void set(ReviewJsonDecoder decoder) {
+		decoder.copy(ReviewJsonDecoder.ID, id);
+		decoder.copy(ReviewJsonDecoder.QUERY, query);
+		epochDay = decoder.getEpochDay(ReviewJsonDecoder.CREATED_AT);
+		decoder.copy(ReviewJsonDecoder.TITLE, title);
+		decoder.copy(ReviewJsonDecoder.TEXT, text);
+	}
+
+	/**
+	 * Copy this review into a reused {@link VariablesJson} for the text helpers.
+	 */
+	public VariablesJson toVariablesJson(VariablesJson review) {
+		review.setId(id.toString());
+		review.setQuery(query.toString());
+		review.setTitle(title.toString());
+		review.setText(text.toString());
+		review.setEpochDay(epochDay);
+		return review;
+	}
+
+	// ---------------------------------------------- GET AND SETS ------------------------------------------------------------------------------------
+	/**
+	 * @return the id
+	 */
+	public Text getId() {
+		return id;
+	}
+	/**
+	 * @return the query
+	 */
+	public Text getQuery() {
+		return query;
+	}
+	/**
+	 * @return the date in days since 1970-01-01
+	 */
+	public int getEpochDay() {
+		return epochDay;
+	}
+	/**
+	 * @param epochDay the date in days since 1970-01-01
+	 */
+	public void setEpochDay(int epochDay) {
+		this.epochDay = epochDay;
+	}
+	/**
+	 * @return the title
+	 */
+	public Text getTitle() {
+		return title;
+	}
+	/**
+	 * @return the text
+	 */
+	public Text getText() {
+		return text;
+	}
+	@Override
+	public String toString() {
+		return "Review [id=" + id + ", query=" + query + ", epochDay=" + epochDay + ", title=" + title + ", text=" + text + "]";
+	}
+}
@@ -0,0 +1,27 @@
+package application;
+
+/**
+ * Receives the fit of the model while {@link LdaGibbsSampler} samples, every
+ * evaluation interval, and its convergence, see
+ * {@link LdaGibbsSampler#convergence}.
+ */
+public interface SamplerListener {
+
+	/**
+	 * @param iteration     iterations done so far
+	 * @param logLikelihood log p(w | z) of the training documents
+	 * @param perplexity    perplexity of the odd terms of the held-out
+	 *                      documents given topics sampled over their even
+	 *                      terms, see {@link LdaGibbsSampler#perplexity},
+	 *                      NaN without held-out documents
+	 */
+	void evaluated(int iteration, double logLikelihood, double perplexity);
+
+	/**
+	 * Called when the sampler stops early, the log likelihood having stayed
+	 * within the tolerance for the convergence window.
+	 *
+	 * @param iteration iterations done
+	 */
+	void converged(int iteration);
+}
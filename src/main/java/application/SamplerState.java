@@ -0,0 +1,90 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Topic assignments of a trained {@link LdaGibbsSampler} and its
+ * hyperparameters, saved with the {@link Corpus} they belong to so that
+ * training can go on with more documents, see {@link LdaGibbsSampler#resume}.
+ * The counts are not saved; they follow from the assignments.
+ */
+public class SamplerState implements Writable {
+
+	private static final int VERSION = 1;
+
+	private int K;
+	private double alpha;
+	private double beta;
+	private int documents;
+	private int[] z = new int[0];
+
+	public SamplerState() {
+	}
+
+	/**
+	 * @param documents number of documents the assignments cover
+	 * @param z         topic of each of their terms; not copied
+	 */
+	public SamplerState(int K, double alpha, double beta, int documents, int[] z) {
+		this.K = K;
+		this.alpha = alpha;
+		this.beta = beta;
+		this.documents = documents;
+		this.z = z;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, VERSION);
+		WritableUtils.writeVInt(out, K);
+		out.writeDouble(alpha);
+		out.writeDouble(beta);
+		WritableUtils.writeVInt(out, documents);
+		WritableUtils.writeVInt(out, z.length);
+		for (int topic : z) {
+			WritableUtils.writeVInt(out, topic);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int version = WritableUtils.readVInt(in);
+		if (version != VERSION)
+			throw new IOException("unsupported sampler state version " + version);
+		K = WritableUtils.readVInt(in);
+		alpha = in.readDouble();
+		beta = in.readDouble();
+		documents = WritableUtils.readVInt(in);
+		z = new int[WritableUtils.readVInt(in)];
+		for (int n = 0; n < z.length; n++) {
+			z[n] = WritableUtils.readVInt(in);
+		}
+	}
+
+	// ---- GET AND SETS ----
+
+	public int getK() {
+		return K;
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	public double getBeta() {
+		return beta;
+	}
+
+	public int getDocuments() {
+		return documents;
+	}
+
+	public int[] getZ() {
+		return z;
+	}
+}
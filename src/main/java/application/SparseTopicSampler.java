@@ -0,0 +1,282 @@
+package application;
+
+/**
+ * SparseLDA sampler (Yao, Mimno and McCallum, 2009).<br>
+ * The full conditional is split into three buckets: s = alpha * beta /
+ * (n_k + V * beta) over every topic, r = nd_k * beta / (n_k + V * beta) over
+ * the topics of the document and q = (alpha + nd_k) * nw_k / (n_k + V * beta)
+ * over the topics of the word. s and r are kept up to date as counts change
+ * and q only visits the topics the word is assigned to, so the cost of a term
+ * follows the number of topics of its document and word rather than K. The
+ * s bucket, the only one over all topics, is drawn rarely.
+ */
+public class SparseTopicSampler implements TopicSampler {
+
+	/**
+	 * documents started between two exact recomputations of the s bucket<br>
+	 */
+	private static final int RESUM_INTERVAL = 1024;
+
+	private RandomStream random = new RandomStream();
+
+	private int[] nw;
+	private int[] nwsum;
+	private int K;
+	private double alpha;
+	private double beta;
+	private double vBeta;
+
+	/**
+	 * topics with nw[w * K + k] > 0 are wordTopics[wordStart[w]] to
+	 * wordTopics[wordStart[w] + wordSize[w] - 1]<br>
+	 */
+	private int[] wordTopics;
+	private int[] wordStart;
+	private int[] wordSize;
+
+	/**
+	 * topics with nd[k] > 0 and docIndex[k] their position + 1 in it, 0 when absent<br>
+	 */
+	private int[] docTopics;
+	private int docSize;
+	private int[] docIndex;
+
+	/**
+	 * coef[k] = (alpha + nd[k]) / (nwsum[k] + V * beta) for the current document<br>
+	 */
+	private double[] coef;
+
+	/**
+	 * cumulative weights of the q bucket<br>
+	 */
+	private double[] q;
+
+	private double sSum;
+	private double rSum;
+	private int documents;
+
+	private int[] words;
+	private int[] z;
+	private int[] nd;
+	private int ndOffset;
+
+	@Override
+	public TopicSampler fork() {
+		return new SparseTopicSampler();
+	}
+
+	@Override
+	public void setRandom(RandomStream random) {
+		this.random = random;
+	}
+
+	@Override
+	public void init(int[] nw, int[] nwsum, int K, double alpha, double beta) {
+		this.nw = nw;
+		this.nwsum = nwsum;
+		this.K = K;
+		this.alpha = alpha;
+		this.beta = beta;
+		int V = nw.length / K;
+		this.vBeta = V * beta;
+
+		// a word never has more topics than instances
+		wordStart = new int[V + 1];
+		wordSize = new int[V];
+		for (int w = 0; w < V; w++) {
+			int total = 0;
+			for (int k = 0; k < K; k++) {
+				total += nw[w * K + k];
+			}
+			wordStart[w + 1] = wordStart[w] + Math.min(K, total);
+		}
+		wordTopics = new int[wordStart[V]];
+		for (int w = 0; w < V; w++) {
+			int size = 0;
+			for (int k = 0; k < K; k++) {
+				if (nw[w * K + k] > 0)
+					wordTopics[wordStart[w] + size++] = k;
+			}
+			wordSize[w] = size;
+		}
+
+		docTopics = new int[K];
+		docIndex = new int[K];
+		docSize = 0;
+		coef = new double[K];
+		q = new double[K];
+		for (int k = 0; k < K; k++) {
+			coef[k] = alpha / (nwsum[k] + vBeta);
+		}
+		resum();
+	}
+
+	@Override
+	public void beginDocument(int[] words, int[] z, int start, int end, int[] nd, int ndOffset) {
+		for (int i = 0; i < docSize; i++) {
+			int k = docTopics[i];
+			coef[k] = alpha / (nwsum[k] + vBeta);
+			docIndex[k] = 0;
+		}
+		docSize = 0;
+		for (int n = start; n < end; n++) {
+			int k = z[n];
+			if (docIndex[k] == 0) {
+				docTopics[docSize++] = k;
+				docIndex[k] = docSize;
+			}
+		}
+		rSum = 0;
+		for (int i = 0; i < docSize; i++) {
+			int k = docTopics[i];
+			double denom = nwsum[k] + vBeta;
+			rSum += nd[ndOffset + k] * beta / denom;
+			coef[k] = (alpha + nd[ndOffset + k]) / denom;
+		}
+		if (++documents % RESUM_INTERVAL == 0) {
+			resum();
+		}
+		this.words = words;
+		this.z = z;
+		this.nd = nd;
+		this.ndOffset = ndOffset;
+	}
+
+	@Override
+	public int sample(int n) {
+		int w = words[n];
+		int topic = z[n];
+		remove(w, topic);
+
+		int wk = w * K;
+		int first = wordStart[w];
+		int size = wordSize[w];
+		double qSum = 0;
+		for (int i = 0; i < size; i++) {
+			int k = wordTopics[first + i];
+			qSum += coef[k] * nw[wk + k];
+			q[i] = qSum;
+		}
+
+		double u = random.nextDouble() * (sSum + rSum + qSum);
+		if (u < qSum) {
+			int i = 0;
+			while (i < size - 1 && u >= q[i]) {
+				i++;
+			}
+			topic = wordTopics[first + i];
+		} else if (u < qSum + rSum && docSize > 0) {
+			u -= qSum;
+			int i = 0;
+			for (; i < docSize - 1; i++) {
+				int k = docTopics[i];
+				u -= nd[ndOffset + k] * beta / (nwsum[k] + vBeta);
+				if (u < 0)
+					break;
+			}
+			topic = docTopics[i];
+		} else {
+			u -= qSum + rSum;
+			double ab = alpha * beta;
+			for (topic = 0; topic < K - 1; topic++) {
+				u -= ab / (nwsum[topic] + vBeta);
+				if (u < 0)
+					break;
+			}
+		}
+
+		add(w, topic);
+		return topic;
+	}
+
+	private void remove(int w, int k) {
+		int dk = ndOffset + k;
+		double denom = nwsum[k] + vBeta;
+		sSum -= alpha * beta / denom;
+		rSum -= nd[dk] * beta / denom;
+		nw[w * K + k]--;
+		nd[dk]--;
+		nwsum[k]--;
+		denom = nwsum[k] + vBeta;
+		sSum += alpha * beta / denom;
+		rSum += nd[dk] * beta / denom;
+		coef[k] = (alpha + nd[dk]) / denom;
+		if (nw[w * K + k] == 0) {
+			dropWordTopic(w, k);
+		}
+		if (nd[dk] == 0) {
+			int i = docIndex[k] - 1;
+			int last = docTopics[--docSize];
+			docTopics[i] = last;
+			docIndex[last] = i + 1;
+			docIndex[k] = 0;
+		}
+	}
+
+	private void add(int w, int k) {
+		int dk = ndOffset + k;
+		if (nw[w * K + k] == 0) {
+			wordTopics[wordStart[w] + wordSize[w]++] = k;
+		}
+		if (nd[dk] == 0) {
+			docTopics[docSize++] = k;
+			docIndex[k] = docSize;
+		}
+		double denom = nwsum[k] + vBeta;
+		sSum -= alpha * beta / denom;
+		rSum -= nd[dk] * beta / denom;
+		nw[w * K + k]++;
+		nd[dk]++;
+		nwsum[k]++;
+		denom = nwsum[k] + vBeta;
+		sSum += alpha * beta / denom;
+		rSum += nd[dk] * beta / denom;
+		coef[k] = (alpha + nd[dk]) / denom;
+	}
+
+	/**
+	 * The s bucket and the coefficients follow the new totals; the r bucket
+	 * is recomputed by the next beginDocument().
+	 */
+	@Override
+	public void move(int w, int from, int to) {
+		int wk = w * K;
+		if (--nw[wk + from] == 0) {
+			dropWordTopic(w, from);
+		}
+		if (nw[wk + to]++ == 0) {
+			wordTopics[wordStart[w] + wordSize[w]++] = to;
+		}
+		moveTotal(from, -1);
+		moveTotal(to, 1);
+	}
+
+	private void moveTotal(int k, int change) {
+		sSum -= alpha * beta / (nwsum[k] + vBeta);
+		nwsum[k] += change;
+		double denom = nwsum[k] + vBeta;
+		sSum += alpha * beta / denom;
+		coef[k] = docIndex[k] == 0 ? alpha / denom : (alpha + nd[ndOffset + k]) / denom;
+	}
+
+	private void dropWordTopic(int w, int k) {
+		int first = wordStart[w];
+		int last = first + --wordSize[w];
+		for (int i = first; i < last; i++) {
+			if (wordTopics[i] == k) {
+				wordTopics[i] = wordTopics[last];
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Recompute the s bucket, which is otherwise updated incrementally.
+	 */
+	private void resum() {
+		sSum = 0;
+		for (int k = 0; k < K; k++) {
+			sSum += alpha * beta / (nwsum[k] + vBeta);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Shuffle key of a job doing several analyses at once: a one-byte tag naming
+ * the analysis, then the key of that analysis as bytes.<br>
+ * Serialised as a vint length and the bytes, tag first, and compared on the
+ * raw bytes, so the keys of one analysis sort together and sorting never
+ * deserialises keys.
+ */
+public class TaggedKey implements WritableComparable<TaggedKey> {
+
+	/**
+	 * bytes[0] is the tag<br>
+	 */
+	private byte[] bytes = new byte[16];
+	private int length;
+
+	/**
+	 * Set the key to the bytes, which start with the tag.
+	 */
+	public void set(byte[] tagged, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(tagged, offset, bytes, 0, length);
+		this.length = length;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, length);
+		out.write(bytes, 0, length);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int size = WritableUtils.readVInt(in);
+		ensureCapacity(size);
+		in.readFully(bytes, 0, size);
+		length = size;
+	}
+
+	/**
+	 * Same order as the raw comparator: unsigned bytes, tag first.
+	 */
+	@Override
+	public int compareTo(TaggedKey other) {
+		return WritableComparator.compareBytes(bytes, 0, length, other.bytes, 0, other.length);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof TaggedKey && compareTo((TaggedKey) o) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return WritableComparator.hashBytes(bytes, length);
+	}
+
+	@Override
+	public String toString() {
+		return getTag() + ":" + new String(bytes, 1, length - 1, StandardCharsets.UTF_8);
+	}
+
+	// ---- GET AND SETS ----
+
+	public int getTag() {
+		return bytes[0] & 0xFF;
+	}
+
+	/**
+	 * @return the buffer, the tag at 0 and the key from 1 to getLength()
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the number of bytes, tag included
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Compares the serialised bytes after their lengths.
+	 */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+			super(TaggedKey.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+			int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+			return compareBytes(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+		}
+	}
+
+	static {
+		WritableComparator.define(TaggedKey.class, new Comparator());
+	}
+}
@@ -0,0 +1,59 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Number of documents a term appears in and number of its occurrences.<br>
+ * Values written by the mappers are summed by the combiners and the reducer
+ * of the vocabulary job; written as text, the two numbers separated by a tab.
+ */
+public class TermFrequency implements Writable {
+
+	private long documents;
+	private long occurrences;
+
+	public void set(long documents, long occurrences) {
+		this.documents = documents;
+		this.occurrences = occurrences;
+	}
+
+	/**
+	 * Add the frequencies of the other value to these.
+	 */
+	public void add(TermFrequency other) {
+		documents += other.documents;
+		occurrences += other.occurrences;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVLong(out, documents);
+		WritableUtils.writeVLong(out, occurrences);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		documents = WritableUtils.readVLong(in);
+		occurrences = WritableUtils.readVLong(in);
+	}
+
+	@Override
+	public String toString() {
+		return documents + "\t" + occurrences;
+	}
+
+	// ---- GET AND SETS ----
+
+	public long getDocuments() {
+		return documents;
+	}
+
+	public long getOccurrences() {
+		return occurrences;
+	}
+}
@@ -0,0 +1,176 @@
+package application;
+
+import java.text.Normalizer;
+
+/**
+ * Hand-written replacement for the regex chain of {@link VariablesJson#getCleanedContent()}.<br>
+ * The result is the same as: NFD normalisation, removing combining diacritical
+ * marks, removing "http://" and "htt://" links together with one following
+ * whitespace, turning everything but ASCII letters into spaces, dropping words
+ * of 3 letters or fewer, collapsing spaces and lower-casing. Note that, like the
+ * regexes, "https://" links are not removed and a removed link glues the word
+ * before it to the word after it.<br>
+ * An instance keeps its buffers between calls and is not thread-safe.
+ */
+public class TextCleaner {
+
+	/**
+	 * Receives each cleaned, lower-cased token; the buffer is reused after the call.
+	 */
+	public interface TokenHandler {
+		void token(char[] buffer, int offset, int length);
+	}
+
+	private static final int MIN_LENGTH = 4;
+
+	/**
+	 * FOLD[c] what a non-ASCII char becomes after NFD and mark removal, null when unchanged<br>
+	 */
+	private static final char[][] FOLD = new char[0x10000][];
+
+	/**
+	 * largest number of chars a single char folds into<br>
+	 */
+	private static final int MAX_FOLD;
+
+	static {
+		int max = 1;
+		for (int c = 0x80; c < 0x10000; c++) {
+			if (Character.isSurrogate((char) c))
+				continue;
+			String decomposed = Normalizer.normalize(String.valueOf((char) c), Normalizer.Form.NFD);
+			StringBuilder folded = new StringBuilder(decomposed.length());
+			for (int i = 0; i < decomposed.length(); i++) {
+				char d = decomposed.charAt(i);
+				if (d < 0x300 || d > 0x36F)
+					folded.append(d);
+			}
+			if (folded.length() != 1 || folded.charAt(0) != c) {
+				FOLD[c] = folded.toString().toCharArray();
+				max = Math.max(max, folded.length());
+			}
+		}
+		MAX_FOLD = max;
+	}
+
+	private char[] folded = new char[256];
+	private char[] word = new char[32];
+	private final StringBuilder joined = new StringBuilder(256);
+
+	private final TokenHandler joiner = new TokenHandler() {
+		@Override
+		public void token(char[] buffer, int offset, int length) {
+			if (joined.length() > 0)
+				joined.append(' ');
+			joined.append(buffer, offset, length);
+		}
+	};
+
+	/**
+	 * @return the cleaned tokens joined by single spaces
+	 */
+	public String clean(CharSequence text) {
+		joined.setLength(0);
+		tokenize(text, joiner);
+		return joined.toString();
+	}
+
+	/**
+	 * Hand every token of the cleaned text to the handler, in order.
+	 */
+	public void tokenize(CharSequence text, TokenHandler handler) {
+		int n = fold(text);
+		char[] f = folded;
+		int length = 0;
+		int i = 0;
+		while (i < n) {
+			char c = f[i];
+			if (c == 'h') {
+				int end = link(f, i, n);
+				if (end > i) {
+					i = end;
+					continue;
+				}
+			}
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+				if (length == word.length) {
+					char[] bigger = new char[length * 2];
+					System.arraycopy(word, 0, bigger, 0, length);
+					word = bigger;
+				}
+				word[length++] = (char) (c | 0x20);
+			} else {
+				if (length >= MIN_LENGTH)
+					handler.token(word, 0, length);
+				length = 0;
+			}
+			i++;
+		}
+		if (length >= MIN_LENGTH)
+			handler.token(word, 0, length);
+	}
+
+	/**
+	 * Copy the text into the fold buffer, decomposing accented chars and dropping marks.
+	 *
+	 * @return number of folded chars
+	 */
+	private int fold(CharSequence text) {
+		int length = text.length();
+		if (folded.length < length * MAX_FOLD) {
+			folded = new char[Math.max(length * MAX_FOLD, folded.length * 2)];
+		}
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			char[] replacement = c < 0x80 ? null : FOLD[c];
+			if (replacement == null) {
+				folded[n++] = c;
+			} else {
+				for (char r : replacement) {
+					folded[n++] = r;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Match "http?://\S+\s?" at position i.
+	 *
+	 * @return the offset after the link, or i when there is none
+	 */
+	private static int link(char[] f, int i, int n) {
+		int j;
+		if (startsWith(f, i, n, "http://")) {
+			j = i + 7;
+		} else if (startsWith(f, i, n, "htt://")) {
+			j = i + 6;
+		} else {
+			return i;
+		}
+		if (j >= n || isSpace(f[j]))
+			return i;
+		while (j < n && !isSpace(f[j])) {
+			j++;
+		}
+		return j < n ? j + 1 : j;
+	}
+
+	private static boolean startsWith(char[] f, int i, int n, String prefix) {
+		if (n - i < prefix.length())
+			return false;
+		for (int k = 0; k < prefix.length(); k++) {
+			if (f[i + k] != prefix.charAt(k))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same set as the regex \s: space, \t, \n, \x0B, \f and \r.
+	 */
+	private static boolean isSpace(char c) {
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+}
@@ -0,0 +1,106 @@
+package application;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.Normalizer;
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Differential check of {@link TextCleaner} against the regex chain it
+ * replaced in {@link VariablesJson#getCleanedContent()}.<br>
+ * The text and title of every review of the file, then random strings built
+ * from the cases the regexes are sensitive to (links, short words, digits,
+ * accents, whitespace), must clean to the same string, and the tokens handed
+ * to a TokenHandler must be the words of that string. Prints the first
+ * differences and exits with 1 when there is any.<br>
+ * Usage: TextCleanerCheck [json lines file] [random strings]
+ */
+public class TextCleanerCheck {
+
+	private static final int MAX_REPORTED = 10;
+
+	private static final String[] PIECES = { "h", "t", "p", "htt", "http", "://", ":", "/", " ", "  ", "\t", "\n",
+			"\u000B", "\f", "\r", "\u00E9", "e\u0301", "\u0301", "\u212A", "1", "_", "\uD83D\uDE00", "\u00DF", "\u00C5",
+			"\u00A0", "ab", "abc", "abcd", "word", "x", "\u01C4", "\u1F82", "\u0483", "\u05B0", "\u0131", "\u0130",
+			"\uFB01", ".", "'", "-", "hTtp://", "https://", "www.x.com", "a" };
+
+	private static int differences;
+
+	/**
+	 * The cleaning of getCleanedContent() before TextCleaner.
+	 */
+	static String regexes(String text) {
+		String cleaned = Normalizer.normalize(text, Normalizer.Form.NFD);
+		return cleaned
+				.replaceAll("[\\p{InCombiningDiacriticalMarks}]", "")
+				.replaceAll("http?://\\S+\\s?", "")
+				.replaceAll("[^a-zA-Z0-9\\s]", " ")
+				.replaceAll("[0-9\\s]", " ")
+				.replaceAll("\\b\\w{1,3}\\b\\s?", "")
+				.replaceAll("\\s+", " ")
+				.toLowerCase().trim();
+	}
+
+	public static void main(String[] args) throws IOException {
+		String path = args.length > 0 ? args[0] : "jsonfiles/employee.json";
+		int strings = args.length > 1 ? Integer.parseInt(args[1]) : 300000;
+
+		TextCleaner cleaner = new TextCleaner();
+		ReviewJsonDecoder decoder = new ReviewJsonDecoder();
+		VariablesJson review = new VariablesJson();
+		int checked = 0;
+		for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+			if (line.trim().isEmpty() || decoder.decode(new Text(line), review) == null)
+				continue;
+			for (String text : new String[] { review.getText(), review.getTitle() }) {
+				if (text != null) {
+					check(cleaner, text);
+					checked++;
+				}
+			}
+		}
+
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < strings; i++) {
+			sb.setLength(0);
+			int pieces = random.nextInt(25);
+			for (int j = 0; j < pieces; j++) {
+				// now and then any char of the BMP, to reach the fold table
+				if (random.nextInt(8) == 0) {
+					sb.append((char) random.nextInt(0x10000));
+				} else {
+					sb.append(PIECES[random.nextInt(PIECES.length)]);
+				}
+			}
+			check(cleaner, sb.toString());
+			checked++;
+		}
+
+		System.out.printf("%d texts checked, %d differences%n", checked, differences);
+		System.exit(differences == 0 ? 0 : 1);
+	}
+
+	private static void check(TextCleaner cleaner, String text) {
+		String expected = regexes(text);
+		String cleaned = cleaner.clean(text);
+		final StringBuilder tokens = new StringBuilder();
+		cleaner.tokenize(text, new TextCleaner.TokenHandler() {
+			@Override
+			public void token(char[] buffer, int offset, int length) {
+				if (tokens.length() > 0)
+					tokens.append(' ');
+				tokens.append(buffer, offset, length);
+			}
+		});
+		if (!expected.equals(cleaned) || !expected.equals(tokens.toString())) {
+			if (differences++ < MAX_REPORTED) {
+				System.out.printf("text   [%s]%nregex  [%s]%nclean  [%s]%ntokens [%s]%n", text, expected, cleaned, tokens);
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+/**
+ * Decides which tokens of a review become words, the same way for every job.<br>
+ * A token is kept when it has at least tokens.min.length chars (3 by
+ * default), is not an http:// link and is not a stop word; a CoreNLP token
+ * is also dropped when its named entity class is one of
+ * tokens.entities.dropped, numbers, dates, amounts and links by default. The
+ * stop words are the built-in list, or the file given to
+ * {@link #setStopWords}, one lower-case word per line, which reaches the tasks
+ * through the distributed cache. They sit in an open-addressing table hashed
+ * as String.hashCode, so a token is looked up from a String or from part of
+ * any CharSequence in O(1) without allocating; entity classes are bits of a
+ * mask.
+ */
+public class TokenFilter {
+
+	public static final String STOPWORDS_KEY = "tokens.stopwords";
+	public static final String MIN_LENGTH_KEY = "tokens.min.length";
+
+	/**
+	 * comma separated names of {@link Entity}<br>
+	 */
+	public static final String ENTITIES_KEY = "tokens.entities.dropped";
+
+	public static final String DEFAULT_ENTITIES = "NUMBER,ORDINAL,PERCENT,DATE,EMAIL,MONEY,TIME,URL";
+	public static final int DEFAULT_MIN_LENGTH = 3;
+
+	/**
+	 * Named entity classes of the CoreNLP NER annotator.
+	 */
+	public static enum Entity {
+		O, PERSON, LOCATION, ORGANIZATION, MISC, MONEY, NUMBER, ORDINAL, PERCENT, DATE, TIME, DURATION, SET,
+		EMAIL, URL, CITY, STATE_OR_PROVINCE, COUNTRY, NATIONALITY, RELIGION, TITLE, IDEOLOGY, CRIMINAL_CHARGE,
+		CAUSE_OF_DEATH, HANDLE
+	}
+
+	private static final Map<String, Entity> ENTITIES = new HashMap<String, Entity>();
+
+	static {
+		for (Entity entity : Entity.values()) {
+			ENTITIES.put(entity.name(), entity);
+		}
+	}
+
+	public static final List<String> DEFAULT_STOPWORDS = Arrays.asList(new String[]{"n't", "'ll", "'ve", "1-1", "a", "a's", "able", "about", "above", "abroad", "abst", "accordance", "according", "accordingly", "across", "act", "actually", "added", "adj", "adopted", "affected", "affecting", "affects", "after", "afterwards", "again", "against", "ago", "ah", "ahead", "ain't", "all", "allow", "allows", "almost", "alone", "along", "alongside", "already", "also", "although", "always", "am", "amid", "amidst", "among", "amongst", "amoungst", "amount", "an", "and", "announce", "another", "any", "anybody", "anyhow", "anymore", "anyone", "anything", "anyway", "anyways", "anywhere", "apart", "apparently", "appear", "appreciate", "appropriate", "approximately", "are", "area", "areas", "aren", "aren't", "arent", "arise", "around", "as", "aside", "ask", "asked", "asking", "asks", "associated", "at", "auth", "available", "away", "awfully", "b", "back", "backed", "backing", "backs", "backward", "backwards", "be", "became", "because", "become", "becomes", "becoming", "been", "before", "beforehand", "began", "begin", "beginning", "beginnings", "begins", "behind", "being", "beings", "believe", "below", "beside", "besides", "best", "better", "between", "beyond", "big", "bill", "biol", "both", "bottom", "brief", "briefly", "but", "by", "c", "c'mon", "c's", "ca", "call", "called", "came", "can", "can't", "cannot", "cant", "caption", "case", "cases", "cause", "causes", "certain", "certainly", "changes", "clear", "clearly", "co", "co.", "com", "come", "comes", "computer", "con", "concerning", "consequently", "consider", "considering", "contain", "containing", "contains", "corresponding", "could", "couldn't", "couldnt", "course", "cry", "currently", "d", "dare", "daren't", "date", "de", "dear", "definitely", "describe", "described", "despite", "detail", "did", "didn't", "differ", "different", "differently", "directly", "do", "does", "doesn't", "doing", "don't", "done", "down", "downed", "downing", "downs", "downwards", "due", "during", "e", "each", "early", "ed", "edu", "effect", "eg", "eight", "eighty", "either", "eleven", "else", "elsewhere", "empty", "end", "ended", "ending", "ends", "enough", "entirely", "especially", "et", "et-al", "etc", "even", "evenly", "ever", "evermore", "every", "everybody", "everyone", "everything", "everywhere", "ex", "exactly", "example", "except", "f", "face", "faces", "fact", "facts", "fairly", "far", "farther", "felt", "few", "fewer", "ff", "fifteen", "fifth", "fify", "fill", "find", "finds", "fire", "first", "five", "fix", "followed", "following", "follows", "for", "forever", "former", "formerly", "forth", "forty", "forward", "found", "four", "from", "front", "full", "fully", "further", "furthered", "furthering", "furthermore", "furthers", "g", "gave", "general", "generally", "get", "gets", "getting", "give", "given", "gives", "giving", "go", "goes", "going", "gone", "good", "goods", "got", "gotten", "greater", "greatest", "greetings", "group", "grouped", "grouping", "groups", "h", "had", "hadn't", "half", "happens", "hardly", "has", "hasn't", "hasnt", "have", "haven't", "having", "he", "he'd", "he'll", "he's", "hed", "held", "hello", "help", "hence", "her", "here", "here's", "hereafter", "hereby", "herein", "heres", "hereupon", "hers", "herse", "herself", "hes", "hi", "hid", "high", "higher", "highest", "him", "himse", "himself", "his", "hither", "home", "hopefully", "how", "howbeit", "however", "hundred", "i", "i'd", "i'll", "i'm", "i've", "id", "ie", "if", "ignored", "im", "immediate", "immediately", "importance", "important", "in", "inasmuch", "inc", "inc.", "include", "included", "including", "indeed", "index", "indicate", "indicated", "indicates", "information", "inner", "inside", "insofar", "instead", "interest", "interested", "interesting", "interests", "into", "invention", "inward", "is", "isn't", "it", "it'd", "it'll", "it's", "itd", "its", "itse", "itself", "j", "just", "k", "keep", "keeps", "kept", "keys", "kg", "kind", "km", "knew", "know", "known", "knows", "l", "large", "largely", "last", "late", "lately", "later", "latest", "latter", "latterly", "least", "led", "less", "lest", "let", "let's", "lets", "like", "liked", "likely", "likewise", "line", "links", "little", "long", "longer", "longest", "look", "looking", "looks", "low", "lower", "ltd", "m", "made", "mainly", "makes", "making", "man", "many", "may", "maybe", "mayn't", "me", "mean", "means", "meantime", "meanwhile", "member", "members", "men", "merely", "mg", "might", "mightn't", "mill", "million", "mine", "minus", "miss", "ml", "more", "moreover", "most", "mostly", "move", "moved", "mr", "mrs", "much", "mug", "must", "mustn't", "my", "myse", "myself", "n", "na", "name", "namely", "nay", "nd", "near", "nearly", "necessarily", "necessary", "need", "needed", "needing", "needn't", "needs", "neither", "never", "neverf", "neverless", "nevertheless", "new", "newer", "newest", "next", "nine", "ninety", "no", "no-one", "nobody", "non", "none", "nonetheless", "noone", "nor", "normally", "nos", "not", "noted", "nothing", "notwithstanding", "novel", "now", "nowhere", "number", "numbers", "o", "obtain", "obtained", "obviously", "of", "off", "often", "oh", "ok", "okay", "old", "older", "oldest", "omitted", "on", "once", "one", "one's", "ones", "only", "onto", "open", "opened", "opening", "opens", "opposite", "or", "ord", "order", "ordered", "ordering", "orders", "other", "others", "otherwise", "ought", "oughtn't", "our", "ours", "ourselves", "out", "outside", "over", "overall", "owing", "own", "p", "page", "pages", "part", "parted", "particular", "particularly", "parting", "parts", "past", "per", "perhaps", "place", "placed", "places", "please", "plus", "point", "pointed", "pointing", "points", "poorly", "possible", "possibly", "potentially", "pp", "predominantly", "present", "presented", "presenting", "presents", "presumably", "previously", "primarily", "probably", "problem", "problems", "promptly", "proud", "provided", "provides", "put", "puts", "q", "que", "quickly", "quite", "qv", "r", "ran", "rather", "rd", "re", "readily", "really", "reasonably", "received", "recent", "recently", "ref", "refs", "regarding", "regardless", "regards", "related", "relatively", "research", "respectively", "resulted", "resulting", "results", "right", "room", "rooms", "round", "run", "s", "said", "same", "saw", "say", "saying", "says", "sec", "second", "secondly", "seconds", "section", "see", "seeing", "seem", "seemed", "seeming", "seems", "seen", "sees", "self", "selves", "sensible", "sent", "serious", "seriously", "seven", "several", "shall", "shan't", "she", "she'd", "she'll", "she's", "shed", "shes", "should", "shouldn't", "show", "showed", "showing", "shown", "showns", "shows", "side", "sides", "significant", "significantly", "similar", "similarly", "since", "sincere", "six", "sixty", "slightly", "small", "smaller", "smallest", "so", "some", "somebody", "someday", "somehow", "someone", "somethan", "something", "sometime", "sometimes", "somewhat", "somewhere", "soon", "sorry", "specifically", "specified", "specify", "specifying", "state", "states", "still", "stop", "strongly", "sub", "substantially", "successfully", "such", "sufficiently", "suggest", "sup", "sure", "system", "t", "t's", "take", "taken", "taking", "tell", "ten", "tends", "th", "than", "thank", "thanks", "thanx", "that", "that'll", "that's", "that've", "thats", "their", "theirs", "them", "themselves", "then", "thence", "there", "there'd", "there'll", "there're", "there's", "there've", "thereafter", "thereby", "thered", "therefore", "therein", "thereof", "therere", "theres", "thereto", "thereupon", "these", "they", "they'd", "they'll", "they're", "they've", "theyd", "theyre", "thick", "thin", "thing", "things", "think", "thinks", "third", "thirty", "this", "thorough", "thoroughly", "those", "thou", "though", "thoughh", "thought", "thoughts", "thousand", "three", "throug", "through", "throughout", "thru", "thus", "til", "till", "time", "tip", "tis", "to", "today", "together", "too", "took", "top", "toward", "towards", "tried", "tries", "truly", "try", "trying", "ts", "turn", "turned", "turning", "turns", "twas", "twelve", "twenty", "twice", "two", "u", "un", "under", "underneath", "undoing", "unfortunately", "unless", "unlike", "unlikely", "until", "unto", "up", "upon", "ups", "upwards", "us", "use", "used", "useful", "usefully", "usefulness", "uses", "using", "usually", "uucp", "v", "value", "various", "versus", "very", "via", "viz", "vol", "vols", "vs", "w", "want", "wanted", "wanting", "wants", "was", "wasn't", "way", "ways", "we", "we'd", "we'll", "we're", "we've", "wed", "welcome", "well", "wells", "went", "were", "weren't", "what", "what'll", "what's", "what've", "whatever", "whats", "when", "whence", "whenever", "where", "where's", "whereafter", "whereas", "whereby", "wherein", "wheres", "whereupon", "wherever", "whether", "which", "whichever", "while", "whilst", "whim", "whither", "who", "who'd", "who'll", "who's", "whod", "whoever", "whole", "whom", "whomever", "whos", "whose", "why", "widely", "will", "willing", "wish", "with", "within", "without", "won't", "wonder", "words", "work", "worked", "working", "works", "world", "would", "wouldn't", "written", "www", "x", "y", "year", "years", "yes", "yet", "you", "you'd", "you'll", "you're", "you've", "youd", "young", "younger", "youngest", "your", "yourabout", "youre", "yours", "yourself", "yourselves", "z", "zero"});
+
+	/**
+	 * table[slot] stop word, null when free<br>
+	 */
+	private final String[] table;
+	private final int minLength;
+
+	/**
+	 * bit ordinal set for each dropped entity class<br>
+	 */
+	private final long dropped;
+
+	/**
+	 * @param stopWords lower-case stop words
+	 */
+	public TokenFilter(Collection<String> stopWords, int minLength, Collection<Entity> droppedEntities) {
+		table = new String[Integer.highestOneBit(Math.max(4, stopWords.size()) * 2 - 1) << 1];
+		for (String word : stopWords) {
+			int mask = table.length - 1;
+			int slot = mix(word.hashCode()) & mask;
+			while (table[slot] != null && !table[slot].equals(word)) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = word;
+		}
+		this.minLength = minLength;
+		long bits = 0;
+		for (Entity entity : droppedEntities) {
+			bits |= 1L << entity.ordinal();
+		}
+		dropped = bits;
+	}
+
+	/**
+	 * Filter of the built-in stop words and the default entity classes.
+	 */
+	public TokenFilter() {
+		this(DEFAULT_STOPWORDS, DEFAULT_MIN_LENGTH, entities(DEFAULT_ENTITIES));
+	}
+
+	/**
+	 * Filter set by the job configuration, reading the stop word file from
+	 * the distributed cache of the task.
+	 */
+	public static TokenFilter get(Configuration conf) throws IOException {
+		Collection<String> stopWords = DEFAULT_STOPWORDS;
+		if (conf.get(STOPWORDS_KEY) != null) {
+			stopWords = readStopWords(conf, new Path(conf.get(STOPWORDS_KEY)));
+		}
+		return new TokenFilter(stopWords, conf.getInt(MIN_LENGTH_KEY, DEFAULT_MIN_LENGTH),
+				entities(conf.get(ENTITIES_KEY, DEFAULT_ENTITIES)));
+	}
+
+	/**
+	 * Use the stop words of the file, one per line, in the tasks of the job.
+	 */
+	public static void setStopWords(Job job, Path file) throws IOException {
+		Configuration conf = job.getConfiguration();
+		file = file.getFileSystem(conf).makeQualified(file);
+		conf.set(STOPWORDS_KEY, file.toString());
+		DistributedCache.addCacheFile(file.toUri(), conf);
+	}
+
+	/**
+	 * Read the copy of the file the distributed cache made on this node, or
+	 * the file itself outside of a task.
+	 */
+	private static List<String> readStopWords(Configuration conf, Path file) throws IOException {
+		FileSystem fs = file.getFileSystem(conf);
+		Path[] files = DistributedCache.getLocalCacheFiles(conf);
+		if (files != null) {
+			for (Path local : files) {
+				if (local.getName().equals(file.getName())) {
+					fs = FileSystem.getLocal(conf);
+					file = local;
+					break;
+				}
+			}
+		}
+		List<String> words = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim().toLowerCase(Locale.ROOT);
+				if (!line.isEmpty()) {
+					words.add(line);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		return words;
+	}
+
+	/**
+	 * @param names comma separated {@link Entity} names
+	 */
+	public static EnumSet<Entity> entities(String names) {
+		EnumSet<Entity> entities = EnumSet.noneOf(Entity.class);
+		for (String name : names.split(",")) {
+			if (!name.trim().isEmpty()) {
+				entities.add(Entity.valueOf(name.trim()));
+			}
+		}
+		return entities;
+	}
+
+	/**
+	 * @param entity NER tag of a token, null for none; unknown tags are kept
+	 */
+	public boolean dropsEntity(String entity) {
+		if (entity == null)
+			return false;
+		Entity e = ENTITIES.get(entity);
+		return e != null && (dropped & 1L << e.ordinal()) != 0;
+	}
+
+	/**
+	 * @param word lower-case token
+	 */
+	public boolean accept(String word) {
+		return accept(word, 0, word.length()) && !word.startsWith("http://");
+	}
+
+	/**
+	 * @return whether the lower-case token text[start, end) is long enough and not a stop word
+	 */
+	public boolean accept(CharSequence text, int start, int end) {
+		return end - start >= minLength && !isStopWord(text, start, end);
+	}
+
+	public boolean isStopWord(CharSequence text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + text.charAt(i);
+		}
+		int mask = table.length - 1;
+		for (int slot = mix(h) & mask;; slot = (slot + 1) & mask) {
+			String word = table[slot];
+			if (word == null)
+				return false;
+			if (matches(word, text, start, end))
+				return true;
+		}
+	}
+
+	private static boolean matches(String word, CharSequence text, int start, int end) {
+		if (word.length() != end - start)
+			return false;
+		for (int i = 0; i < word.length(); i++) {
+			if (word.charAt(i) != text.charAt(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	private static int mix(int h) {
+		h *= 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,70 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Number of instances of one term assigned to each topic.<br>
+ * Values written by a mapper are summed by the reducers into the topic--term
+ * counts of the next iteration.
+ */
+public class TopicCounts implements Writable {
+
+	private int[] counts = new int[0];
+
+	/**
+	 * Use the array as the counts; it is not copied.
+	 */
+	public void set(int[] counts) {
+		this.counts = counts;
+	}
+
+	/**
+	 * Reset to K zero counts.
+	 */
+	public void clear(int K) {
+		if (counts.length != K) {
+			counts = new int[K];
+		} else {
+			Arrays.fill(counts, 0);
+		}
+	}
+
+	public void add(TopicCounts other) {
+		if (other.counts.length != counts.length)
+			throw new IllegalArgumentException("topic counts differ in size: " + counts.length + " and " + other.counts.length);
+		for (int k = 0; k < counts.length; k++) {
+			counts[k] += other.counts[k];
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, counts.length);
+		for (int c : counts) {
+			WritableUtils.writeVInt(out, c);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int K = WritableUtils.readVInt(in);
+		if (counts.length != K) {
+			counts = new int[K];
+		}
+		for (int k = 0; k < K; k++) {
+			counts[k] = WritableUtils.readVInt(in);
+		}
+	}
+
+	// ---- GET AND SETS ----
+
+	public int[] get() {
+		return counts;
+	}
+}
@@ -0,0 +1,82 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A document of the distributed topic model: its term ids and the topic
+ * currently assigned to each of them.<br>
+ * The arrays are reused across readFields() calls and may be longer than
+ * {@link #getLength()}.
+ */
+public class TopicDocument implements Writable {
+
+	private int length;
+	private int[] words = new int[64];
+	private int[] topics = new int[64];
+
+	public void clear() {
+		length = 0;
+	}
+
+	public void add(int word, int topic) {
+		if (length == words.length) {
+			words = Arrays.copyOf(words, length * 2);
+			topics = Arrays.copyOf(topics, length * 2);
+		}
+		words[length] = word;
+		topics[length] = topic;
+		length++;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, length);
+		for (int n = 0; n < length; n++) {
+			WritableUtils.writeVInt(out, words[n]);
+		}
+		for (int n = 0; n < length; n++) {
+			WritableUtils.writeVInt(out, topics[n]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		length = WritableUtils.readVInt(in);
+		if (length > words.length) {
+			words = new int[length];
+			topics = new int[length];
+		}
+		for (int n = 0; n < length; n++) {
+			words[n] = WritableUtils.readVInt(in);
+		}
+		for (int n = 0; n < length; n++) {
+			topics[n] = WritableUtils.readVInt(in);
+		}
+	}
+
+	// ---- GET AND SETS ----
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return term ids, valid up to {@link #getLength()}
+	 */
+	public int[] getWords() {
+		return words;
+	}
+
+	/**
+	 * @return topic assignments, valid up to {@link #getLength()}
+	 */
+	public int[] getTopics() {
+		return topics;
+	}
+}
@@ -0,0 +1,102 @@
+package application;
+
+/**
+ * Topics of new documents under a trained model, phi fixed.<br>
+ * Gibbs sampling over the terms of one document: p(z_i = k) is proportional
+ * to phi[k][w_i] * (nd_k + alpha). The phi rows of the terms of a document are
+ * copied once from the word-major part of the model, and every buffer is kept
+ * from one document to the next, so a document allocates nothing once the
+ * buffers have grown to its length. Not thread-safe; one per thread, sharing
+ * the model.
+ */
+public class TopicInferencer {
+
+	private final LdaModel model;
+	private final int K;
+	private final double alpha;
+	private final int iterations;
+	private final RandomStream random;
+
+	/**
+	 * rows[n * K + k] probability of term n of the document in topic k<br>
+	 */
+	private float[] rows = new float[0];
+	private int[] z = new int[0];
+	private final float[] row;
+	private final int[] nd;
+	private final long[] ndsum;
+	private final double[] p;
+
+	/**
+	 * @param iterations sweeps over each document, the proportions being
+	 *                   averaged over the second half of them
+	 */
+	public TopicInferencer(LdaModel model, int iterations, RandomStream random) {
+		this.model = model;
+		this.K = model.getK();
+		this.alpha = model.getAlpha();
+		this.iterations = Math.max(1, iterations);
+		this.random = random;
+		row = new float[K];
+		nd = new int[K];
+		ndsum = new long[K];
+		p = new double[K];
+	}
+
+	/**
+	 * @param doc    term ids of the model vocabulary
+	 * @param length number of terms
+	 * @param theta  receives the topic proportions, K entries
+	 */
+	public void infer(int[] doc, int length, float[] theta) {
+		if (rows.length < length * K) {
+			rows = new float[Math.max(length, 2 * rows.length / K) * K];
+			z = new int[rows.length / K];
+		}
+		for (int k = 0; k < K; k++) {
+			nd[k] = 0;
+			ndsum[k] = 0;
+		}
+		for (int n = 0; n < length; n++) {
+			model.word(doc[n], row);
+			System.arraycopy(row, 0, rows, n * K, K);
+			z[n] = random.nextInt(K);
+			nd[z[n]]++;
+		}
+
+		int samples = 0;
+		for (int i = 0; i < iterations; i++) {
+			for (int n = 0; n < length; n++) {
+				nd[z[n]]--;
+				int base = n * K;
+				double sum = 0;
+				for (int k = 0; k < K; k++) {
+					sum += rows[base + k] * (nd[k] + alpha);
+					p[k] = sum;
+				}
+				double u = random.nextDouble() * sum;
+				int topic = 0;
+				while (topic < K - 1 && u >= p[topic]) {
+					topic++;
+				}
+				z[n] = topic;
+				nd[topic]++;
+			}
+			if (2 * i >= iterations - 1) {
+				for (int k = 0; k < K; k++) {
+					ndsum[k] += nd[k];
+				}
+				samples++;
+			}
+		}
+
+		double denom = samples * (length + K * alpha);
+		for (int k = 0; k < K; k++) {
+			theta[k] = (float) ((ndsum[k] + samples * alpha) / denom);
+		}
+	}
+
+	public LdaModel getModel() {
+		return model;
+	}
+}
@@ -0,0 +1,70 @@
+package application;
+
+/**
+ * Strategy drawing the new topic of one term for {@link LdaGibbsSampler}.<br>
+ * A sampler is bound to the topic--term counts with {@link #init}, then to
+ * each document in turn with {@link #beginDocument}; {@link #sample} removes
+ * the term from the counts, draws its topic and adds it back, and
+ * {@link #move} applies the changes other threads made to their own copies.
+ * Implementations allocate nothing per term.
+ */
+public interface TopicSampler {
+
+	/**
+	 * Bind to the topic--term counts; called again whenever they are replaced.
+	 *
+	 * @param nw    nw[w * K + k] instances of word w assigned to topic k
+	 * @param nwsum nwsum[k] total number of words assigned to topic k
+	 */
+	void init(int[] nw, int[] nwsum, int K, double alpha, double beta);
+
+	/**
+	 * Start a document, the terms start to end - 1 of the token arrays.
+	 *
+	 * @param words    term ids
+	 * @param z        topic of each term, parallel to words
+	 * @param nd       nd[ndOffset + k] terms of the document assigned to topic
+	 *                 k, all terms included
+	 */
+	void beginDocument(int[] words, int[] z, int start, int end, int[] nd, int ndOffset);
+
+	/**
+	 * Draw a new topic for term n of the current document and update the
+	 * counts; the caller stores it in z[n].
+	 *
+	 * @param n index in the token arrays, between start and end
+	 * @return the new topic
+	 */
+	int sample(int n);
+
+	/**
+	 * Move an instance of word w from one topic to another in the counts, a
+	 * change sampled by another thread; called between documents.
+	 */
+	void move(int w, int from, int to);
+
+	/**
+	 * @return a new sampler of the same kind, to be used by another thread
+	 */
+	TopicSampler fork();
+
+	/**
+	 * Draw from this stream rather than the unseeded one the sampler starts
+	 * with; a stream is used by one thread only.
+	 */
+	void setRandom(RandomStream random);
+
+	/**
+	 * @param name dense, sparse or alias
+	 * @return a new sampler of that kind, dense when name is null
+	 */
+	static TopicSampler create(String name) {
+		if (name == null || name.equals("dense"))
+			return new DenseTopicSampler();
+		if (name.equals("sparse"))
+			return new SparseTopicSampler();
+		if (name.equals("alias"))
+			return new AliasTopicSampler();
+		throw new IllegalArgumentException("unknown topic sampler: " + name);
+	}
+}
@@ -0,0 +1,58 @@
+package application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Topic proportions of a document, theta, as float32.
+ */
+public class TopicVector implements Writable {
+
+	private float[] values = new float[0];
+
+	/**
+	 * Reset to K zero proportions.
+	 */
+	public void clear(int K) {
+		if (values.length != K) {
+			values = new float[K];
+		} else {
+			Arrays.fill(values, 0);
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, values.length);
+		for (float v : values) {
+			out.writeFloat(v);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int K = WritableUtils.readVInt(in);
+		if (values.length != K) {
+			values = new float[K];
+		}
+		for (int k = 0; k < K; k++) {
+			values[k] = in.readFloat();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(values);
+	}
+
+	// ---- GET AND SETS ----
+
+	public float[] get() {
+		return values;
+	}
+}
@@ -1,59 +1,75 @@
 package application;
-import java.text.Normalizer;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Locale;
+import java.util.TimeZone;
 
 
 public class VariablesJson {
 
 	private String id;
 	private String title;
-	private Date createdAt;
+	private int epochDay = ReviewDates.INVALID;
 	private String text;
+	private String query;
+	private TextCleaner cleaner;
 	
 	
+	/**
+	 * Empty review meant to be filled again for every record with {@link #set}.
+	 */
+	public VariablesJson() {
+	}
+	
 	public VariablesJson(String id, String title, String createdAt, String text) {
-		try {
-			this.id = id;
-			this.text = text;
-			this.title = title;
-			SimpleDateFormat formatter = new SimpleDateFormat("MMM dd, yyyy", Locale.US);
-			this.createdAt = formatter.parse(createdAt);
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
+		this.id = id;
+		this.text = text;
+		this.title = title;
+		this.epochDay = createdAt == null ? ReviewDates.INVALID : ReviewDates.parseEpochDay(createdAt);
 	}
 	
 
 	public VariablesJson(String id, String title, Date createdAt, String text) {
 		this.id = id;
 		this.title = title;
-		this.createdAt = createdAt;
+		setCreatedAt(createdAt);
+		this.text = text;
+	}
+	
+	/**
+	 * Refill this review in place; the date is parsed by {@link ReviewDates}.
+	 */
+	public void set(String id, String title, String createdAt, String text, String query) {
+		this.id = id;
+		this.title = title;
 		this.text = text;
+		this.query = query;
+		this.epochDay = createdAt == null ? ReviewDates.INVALID : ReviewDates.parseEpochDay(createdAt);
 	}
 	
 	/**
-	 * @return
+	 * @return the text without accents, links, digits, punctuation and words of 3 letters or fewer, in lower case
 	 */
 	public String getCleanedContent() {
-		String cleaned = Normalizer.normalize(this.text, Normalizer.Form.NFD);
-		return cleaned
-				.replaceAll("[\\p{InCombiningDiacriticalMarks}]", "")
-				.replaceAll("http?://\\S+\\s?", "")
-				.replaceAll("[^a-zA-Z0-9\\s]", " ")
-				.replaceAll("[0-9\\s]", " ")
-				.replaceAll("\\b\\w{1,3}\\b\\s?", "")
-				.replaceAll("\\s+", " ")
-				.toLowerCase().trim();
+		return cleaner().clean(this.text);
+	}
+	
+	/**
+	 * Hand the tokens of {@link #getCleanedContent()} to the handler without building the string.
+	 */
+	public void tokenizeCleanedContent(TextCleaner.TokenHandler handler) {
+		cleaner().tokenize(this.text, handler);
+	}
+	
+	private TextCleaner cleaner() {
+		if (cleaner == null) {
+			cleaner = new TextCleaner();
+		}
+		return cleaner;
 	}
 	
 	// Formatar as datas para o item d da 3 questão
 	public String dateFormmater() {
-		SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy");
-		return formatter.format(this.createdAt);
+		return epochDay == ReviewDates.INVALID ? null : ReviewDates.formatDay(this.epochDay);
 	}
 	
 	/**
@@ -141,16 +157,36 @@ public class VariablesJson {
 		this.title = title;
 	}
 	/**
-	 * @return the createdAt
+	 * @return the createdAt, midnight of the day in the default time zone, or null
 	 */
 	public Date getCreatedAt() {
-		return createdAt;
+		if (epochDay == ReviewDates.INVALID)
+			return null;
+		long utc = epochDay * 86400000L;
+		return new Date(utc - TimeZone.getDefault().getOffset(utc));
 	}
 	/**
-	 * @param createdAt the createdAt to set
+	 * @param createdAt the createdAt to set, its day taken in the default time zone
 	 */
 	public void setCreatedAt(Date createdAt) {
-		this.createdAt = createdAt;
+		if (createdAt == null) {
+			this.epochDay = ReviewDates.INVALID;
+		} else {
+			long local = createdAt.getTime() + TimeZone.getDefault().getOffset(createdAt.getTime());
+			this.epochDay = (int) Math.floorDiv(local, 86400000L);
+		}
+	}
+	/**
+	 * @return the date in days since 1970-01-01, or {@link ReviewDates#INVALID}
+	 */
+	public int getEpochDay() {
+		return epochDay;
+	}
+	/**
+	 * @param epochDay the date in days since 1970-01-01
+	 */
+	public void setEpochDay(int epochDay) {
+		this.epochDay = epochDay;
 	}
 	/**
 	 * @return the text
@@ -164,9 +200,21 @@ public class VariablesJson {
 	public void setText(String text) {
 		this.text = text;
 	}
+	/**
+	 * @return the query
+	 */
+	public String getQuery() {
+		return query;
+	}
+	/**
+	 * @param query the query to set
+	 */
+	public void setQuery(String query) {
+		this.query = query;
+	}
 	@Override
 	public String toString() {
-		return "Review [id=" + id + ", title=" + title + ", createdAt=" + createdAt + ", text=" + text + "]";
+		return "Review [id=" + id + ", title=" + title + ", createdAt=" + getCreatedAt() + ", text=" + text + "]";
 	}
 
 }
@@ -1,70 +1,403 @@
 package application;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
-public class Vocabulary {
-	
-	Map<String, Integer> word2idMap;
-	String[] id2wordMap;
+/**
+ * Term ids of the words of a corpus, ids given in order of first appearance.<br>
+ * The words are kept as UTF-8 in one byte arena, word id from
+ * starts[id] to starts[id + 1], and found through an open-addressing table of
+ * ids over a 64 bit hash of their bytes; looking up an ASCII word allocates
+ * nothing. Once every word is in, {@link #freeze()} swaps the table for a
+ * minimal perfect hash, two ints per word, and no word can be added anymore.
+ */
+public class Vocabulary implements Writable {
+
+	private static final long SEED = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+	private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Average number of words per bucket of the perfect hash
+	 */
+	private static final int BUCKET_SIZE = 4;
+	private static final int MAX_DISPLACEMENT = 1 << 24;
+
+	private byte[] arena;
+	private int[] starts;
+	private int size;
+
+	/**
+	 * hashes[id] hash of word id; null once frozen
+	 */
+	private long[] hashes;
+
+	/**
+	 * id + 1 of the word in each slot, 0 if free; null once frozen
+	 */
+	private int[] table;
+
+	/**
+	 * Perfect hash once frozen: a word goes to a bucket by the high bits of its
+	 * hash, and the displacement of the bucket gives its slot in ids, see
+	 * {@link #freeze()}.
+	 */
+	private int[] displacements;
+	private int[] ids;
 
 	public Vocabulary() {
-		word2idMap = new TreeMap<String, Integer>();
-		id2wordMap = new String[1024];
+		clear();
+	}
+
+	private void clear() {
+		arena = new byte[8192];
+		starts = new int[1025];
+		size = 0;
+		hashes = new long[1024];
+		table = new int[2048];
+		displacements = null;
+		ids = null;
 	}
 
 	public Integer getId(String word) {
 		return getId(word, false);
 	}
 
-	public String getWord(int id) {
-		return id2wordMap[id];
+	/**
+	 * @param create add the word if it is not in the vocabulary
+	 * @return null if the word is not in the vocabulary and create is false
+	 */
+	public Integer getId(String word, boolean create) {
+		int id = create ? add(word) : indexOf(word);
+		return id < 0 ? null : id;
 	}
 
-	public Integer getId(String word, boolean create) {
-		Integer id = word2idMap.get(word);
-		if (!create)
+	/**
+	 * @return term id of the word, -1 if it is not in the vocabulary
+	 */
+	public int indexOf(String word) {
+		long h = hashAscii(word);
+		byte[] bytes = null;
+		if (h == 0) {
+			bytes = word.getBytes(StandardCharsets.UTF_8);
+			h = hash(bytes, 0, bytes.length);
+		}
+		return find(word, bytes, h);
+	}
+
+	/**
+	 * @return term id of the word, added if it is not in the vocabulary
+	 * @throws IllegalStateException if the word is new and the vocabulary frozen
+	 */
+	public int add(String word) {
+		long h = hashAscii(word);
+		byte[] bytes = null;
+		if (h == 0) {
+			bytes = word.getBytes(StandardCharsets.UTF_8);
+			h = hash(bytes, 0, bytes.length);
+		}
+		int id = find(word, bytes, h);
+		if (id >= 0)
 			return id;
-		if (id == null) {
-			id = word2idMap.size();
+		if (bytes != null)
+			return insert(bytes, 0, bytes.length, h);
+
+		int length = word.length();
+		int start = reserve(length);
+		for (int i = 0; i < length; i++) {
+			arena[start + i] = (byte) word.charAt(i);
+		}
+		return commit(start + length, h);
+	}
+
+	public String getWord(int id) {
+		return new String(arena, starts[id], starts[id + 1] - starts[id], StandardCharsets.UTF_8);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFrozen() {
+		return table == null;
+	}
+
+	/**
+	 * Build the minimal perfect hash of the words and drop the hash table,
+	 * after which only lookups are allowed. Hash and displace: the words go to
+	 * size / {@value #BUCKET_SIZE} buckets, and the buckets, largest first,
+	 * each look for the first displacement d sending all their words to free
+	 * slots, slot = mix(hash ^ d * golden) mod size. A bucket of one word
+	 * takes the next free slot directly, stored as -slot - 1.
+	 */
+	public void freeze() {
+		if (isFrozen())
+			return;
+		int n = size;
+		int buckets = Math.max(1, n / BUCKET_SIZE);
+		int[] bucketOf = new int[n];
+		int[] first = new int[buckets + 1];
+		int largest = 0;
+		for (int id = 0; id < n; id++) {
+			bucketOf[id] = bucket(hashes[id], buckets);
+			largest = Math.max(largest, ++first[bucketOf[id] + 1]);
+		}
+		// bucket b holds members[first[b]] to members[first[b + 1]]
+		for (int b = 0; b < buckets; b++) {
+			first[b + 1] += first[b];
+		}
+		int[] members = new int[n];
+		int[] fill = Arrays.copyOf(first, buckets);
+		for (int id = 0; id < n; id++) {
+			members[fill[bucketOf[id]]++] = id;
+		}
+		// buckets by decreasing size
+		int[] bySize = new int[largest + 2];
+		for (int b = 0; b < buckets; b++) {
+			bySize[largest - (first[b + 1] - first[b]) + 1]++;
+		}
+		for (int s = 0; s <= largest; s++) {
+			bySize[s + 1] += bySize[s];
+		}
+		int[] order = new int[buckets];
+		for (int b = 0; b < buckets; b++) {
+			order[bySize[largest - (first[b + 1] - first[b])]++] = b;
+		}
+
+		int[] displacements = new int[buckets];
+		int[] ids = new int[n];
+		boolean[] taken = new boolean[n];
+		int[] slots = new int[largest];
+		int free = 0;
+		for (int b : order) {
+			int from = first[b], count = first[b + 1] - from;
+			if (count == 0)
+				break;
+			if (count == 1) {
+				while (taken[free]) {
+					free++;
+				}
+				taken[free] = true;
+				ids[free] = members[from];
+				displacements[b] = -free - 1;
+				continue;
+			}
+			int d = 0;
+			for (;; d++) {
+				if (d == MAX_DISPLACEMENT)
+					throw new IllegalStateException("no perfect hash for " + n + " words");
+				if (place(members, from, count, d, n, taken, slots))
+					break;
+			}
+			for (int i = 0; i < count; i++) {
+				taken[slots[i]] = true;
+				ids[slots[i]] = members[from + i];
+			}
+			displacements[b] = d;
+		}
+
+		this.displacements = displacements;
+		this.ids = ids;
+		table = null;
+		hashes = null;
+		arena = Arrays.copyOf(arena, starts[size]);
+		starts = Arrays.copyOf(starts, size + 1);
+	}
+
+	/**
+	 * @return whether displacement d sends the count words of members from
+	 *         index from to distinct free slots, written to slots
+	 */
+	private boolean place(int[] members, int from, int count, int d, int n, boolean[] taken, int[] slots) {
+		for (int i = 0; i < count; i++) {
+			int slot = slot(hashes[members[from + i]], d, n);
+			if (taken[slot])
+				return false;
+			for (int j = 0; j < i; j++) {
+				if (slots[j] == slot)
+					return false;
+			}
+			slots[i] = slot;
 		}
-		word2idMap.put(word, id);
-		if (id2wordMap.length - 1 < id) {
-			resize(word2idMap.size() * 2);
+		return true;
+	}
+
+	private static int bucket(long h, int buckets) {
+		return (int) ((h >>> 32) % buckets);
+	}
+
+	private static int slot(long h, int d, int n) {
+		return (int) Long.remainderUnsigned(mix(h ^ d * GOLDEN), n);
+	}
+
+	/**
+	 * @param bytes UTF-8 of the word, or null if the word is ASCII
+	 */
+	private int find(String word, byte[] bytes, long h) {
+		if (isFrozen()) {
+			if (size == 0)
+				return -1;
+			int d = displacements[bucket(h, displacements.length)];
+			int id = ids[d < 0 ? -d - 1 : slot(h, d, size)];
+			return matches(id, word, bytes) ? id : -1;
+		}
+		int mask = table.length - 1;
+		for (int i = (int) h & mask;; i = (i + 1) & mask) {
+			int entry = table[i];
+			if (entry == 0)
+				return -1;
+			if (hashes[entry - 1] == h && matches(entry - 1, word, bytes))
+				return entry - 1;
+		}
+	}
+
+	private boolean matches(int id, String word, byte[] bytes) {
+		int start = starts[id], length = starts[id + 1] - start;
+		if (bytes != null) {
+			if (length != bytes.length)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (arena[start + i] != bytes[i])
+					return false;
+			}
+			return true;
 		}
-		id2wordMap[id] = word;
+		if (length != word.length())
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (arena[start + i] != word.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private int insert(byte[] bytes, int offset, int length, long h) {
+		int start = reserve(length);
+		System.arraycopy(bytes, offset, arena, start, length);
+		return commit(start + length, h);
+	}
+
+	/**
+	 * @return arena offset of a new word of length bytes
+	 */
+	private int reserve(int length) {
+		if (isFrozen())
+			throw new IllegalStateException("vocabulary is frozen");
+		int start = starts[size];
+		if (start + length > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(2 * arena.length, start + length));
+		}
+		return start;
+	}
 
+	/**
+	 * Give an id to the word just copied to the arena, ending at end.
+	 */
+	private int commit(int end, long h) {
+		int id = size;
+		if (id + 2 > starts.length) {
+			starts = Arrays.copyOf(starts, 2 * starts.length);
+		}
+		if (id == hashes.length) {
+			hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+		}
+		starts[id + 1] = end;
+		hashes[id] = h;
+		size++;
+		if (2 * size > table.length) {
+			table = new int[2 * table.length];
+			for (int i = 0; i < id; i++) {
+				put(i);
+			}
+		}
+		put(id);
 		return id;
 	}
 
-	private void resize(int n) {
-		String[] nArray = new String[n];
-		System.arraycopy(id2wordMap, 0, nArray, 0, id2wordMap.length);
-		id2wordMap = nArray;
+	private void put(int id) {
+		int mask = table.length - 1;
+		int i = (int) hashes[id] & mask;
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		table[i] = id + 1;
 	}
 
-	@SuppressWarnings("unused")
-	private void loseWeight() {
-		if (size() == id2wordMap.length)
-			return;
-		resize(word2idMap.size());
+	/**
+	 * @return hash of the UTF-8 of an ASCII word, 0 if the word is not ASCII
+	 */
+	private static long hashAscii(String word) {
+		long h = SEED;
+		for (int i = 0; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if (c >= 0x80)
+				return 0;
+			h = (h ^ c) * PRIME;
+		}
+		return nonZero(mix(h));
 	}
 
-	public int size() {
-		return word2idMap.size();
+	private static long hash(byte[] bytes, int offset, int length) {
+		long h = SEED;
+		for (int i = offset; i < offset + length; i++) {
+			h = (h ^ (bytes[i] & 0xff)) * PRIME;
+		}
+		return nonZero(mix(h));
+	}
+
+	private static long nonZero(long h) {
+		return h == 0 ? GOLDEN : h;
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Writes the words in the order of their ids, each as
+	 * {@link org.apache.hadoop.io.Text#writeString} would.
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, size);
+		for (int id = 0; id < size; id++) {
+			WritableUtils.writeVInt(out, starts[id + 1] - starts[id]);
+			out.write(arena, starts[id], starts[id + 1] - starts[id]);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int size = WritableUtils.readVInt(in);
+		clear();
+		byte[] bytes = new byte[64];
+		for (int id = 0; id < size; id++) {
+			int length = WritableUtils.readVInt(in);
+			if (length > bytes.length) {
+				bytes = new byte[Math.max(length, 2 * bytes.length)];
+			}
+			in.readFully(bytes, 0, length);
+			insert(bytes, 0, length, hash(bytes, 0, length));
+		}
 	}
 
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < id2wordMap.length; i++) {
-			if (id2wordMap[i] == null)
-				break;
-			sb.append(i).append("=").append(id2wordMap[i]).append("\n");
+		for (int i = 0; i < size; i++) {
+			sb.append(i).append("=").append(getWord(i)).append("\n");
 		}
 		return sb.toString();
 	}
 }
-
-